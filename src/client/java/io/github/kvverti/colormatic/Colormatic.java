@@ -21,14 +21,21 @@
  */
 package io.github.kvverti.colormatic;
 
+import java.util.List;
+
+import io.github.kvverti.colormatic.colormap.BiomeColormaps;
+import io.github.kvverti.colormatic.iface.BiomeRawIdAccess;
 import io.github.kvverti.colormatic.resource.BiomeColormapResource;
 import io.github.kvverti.colormatic.resource.CustomBiomeColormapsResource;
 import io.github.kvverti.colormatic.resource.GlobalColorResource;
 import io.github.kvverti.colormatic.resource.GlobalLightmapResource;
 import io.github.kvverti.colormatic.resource.LightmapsResource;
 import io.github.kvverti.colormatic.resource.LinearColormapResource;
+import io.github.kvverti.colormatic.resource.ResourceIndex;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.resource.IdentifiableResourceReloadListener;
 import net.fabricmc.fabric.api.resource.ResourceManagerHelper;
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.registry.DynamicRegistryManager;
 import net.minecraft.registry.Registry;
@@ -84,6 +91,11 @@ public class Colormatic implements ClientModInitializer {
     public static final GlobalColorResource COLOR_PROPS =
             new GlobalColorResource(new Identifier(MODID, "color"));
 
+    /**
+     * Whether to report internal statistics, such as cache hit rates. Enabled with `-Dcolormatic.debug=true`.
+     */
+    public static final boolean DEBUG = Boolean.getBoolean("colormatic.debug");
+
     private static final ColormaticConfig config = new ColormaticConfig();
 
     public static ColormaticConfig config() {
@@ -107,6 +119,57 @@ public class Colormatic implements ClientModInitializer {
         return id;
     }
 
+    /**
+     * Returns the raw ID of the given biome in the client's biome registry, or -1 if the biome
+     * is not registered. Unlike {@link #getBiomeId(DynamicRegistryManager, Biome)}, this does
+     * not access the registry.
+     */
+    public static int getBiomeRawId(Biome biome) {
+        return ((BiomeRawIdAccess)(Object)biome).colormatic$getRawId();
+    }
+
+    /**
+     * Caches the raw IDs of all biomes in the given dynamic registry manager.
+     * Called when the dynamic registry manager changes.
+     */
+    public static void assignBiomeRawIds(@Nullable DynamicRegistryManager manager) {
+        if(manager != null) {
+            var biomeRegistry = manager.get(RegistryKeys.BIOME);
+            for(var biome : biomeRegistry) {
+                ((BiomeRawIdAccess)(Object)biome).colormatic$setRawId(biomeRegistry.getRawId(biome));
+            }
+        }
+    }
+
+    /**
+     * Returns the biomes of the given dynamic registry manager indexed by raw ID. Tables indexed by raw ID
+     * keep this array and compare the biome at a raw ID with the biome being looked up, so that a biome
+     * whose raw ID was assigned for another registry is never matched with the wrong entry.
+     */
+    public static Biome[] getBiomesByRawId(DynamicRegistryManager manager) {
+        var biomeRegistry = manager.get(RegistryKeys.BIOME);
+        var biomes = new Biome[biomeRegistry.size()];
+        for(var biome : biomeRegistry) {
+            biomes[biomeRegistry.getRawId(biome)] = biome;
+        }
+        return biomes;
+    }
+
+    /**
+     * Precomputes biome-indexed data for all loaded biome colormaps. Called when
+     * the dynamic registry manager changes.
+     */
+    public static void compileBiomeColormaps(@Nullable DynamicRegistryManager manager) {
+        WATER_COLORS.compile(manager);
+        UNDERWATER_COLORS.compile(manager);
+        UNDERLAVA_COLORS.compile(manager);
+        SKY_COLORS.compile(manager);
+        FOG_COLORS.compile(manager);
+        BIRCH_COLORS.compile(manager);
+        SPRUCE_COLORS.compile(manager);
+        BiomeColormaps.compile(manager);
+    }
+
     public static RegistryKey<Biome> getBiomeKey(DynamicRegistryManager manager, Biome biome) {
         return manager.get(RegistryKeys.BIOME).getKey(biome).orElse(BiomeKeys.PLAINS);
     }
@@ -127,27 +190,36 @@ public class Colormatic implements ClientModInitializer {
         ColormaticConfigController.load(config);
 
         ResourceManagerHelper client = ResourceManagerHelper.get(ResourceType.CLIENT_RESOURCES);
-        client.registerReloadListener(WATER_COLORS);
-        client.registerReloadListener(UNDERWATER_COLORS);
-        client.registerReloadListener(UNDERLAVA_COLORS);
-        client.registerReloadListener(SKY_COLORS);
-        client.registerReloadListener(FOG_COLORS);
-        client.registerReloadListener(BIRCH_COLORS);
-        client.registerReloadListener(SPRUCE_COLORS);
-        client.registerReloadListener(REDSTONE_COLORS);
-        client.registerReloadListener(PUMPKIN_STEM_COLORS);
-        client.registerReloadListener(MELON_STEM_COLORS);
-        client.registerReloadListener(MYCELIUM_PARTICLE_COLORS);
-        client.registerReloadListener(LAVA_DROP_COLORS);
-        client.registerReloadListener(DURABILITY_COLORS);
-        client.registerReloadListener(EXPERIENCE_ORB_COLORS);
+        // the index is dropped once every listener that reads it has reloaded
+        List<IdentifiableResourceReloadListener> indexedListeners = List.of(
+            WATER_COLORS,
+            UNDERWATER_COLORS,
+            UNDERLAVA_COLORS,
+            SKY_COLORS,
+            FOG_COLORS,
+            BIRCH_COLORS,
+            SPRUCE_COLORS,
+            REDSTONE_COLORS,
+            PUMPKIN_STEM_COLORS,
+            MELON_STEM_COLORS,
+            MYCELIUM_PARTICLE_COLORS,
+            LAVA_DROP_COLORS,
+            DURABILITY_COLORS,
+            EXPERIENCE_ORB_COLORS,
+            LIGHTMAP_PROPS,
+            LIGHTMAPS
+        );
+        for(IdentifiableResourceReloadListener listener : indexedListeners) {
+            client.registerReloadListener(listener);
+        }
         // Note: we don't register this as a reload listener here because it
         // has to be loaded before block models. In order to do this, we mix
         // into BakedModelManager's prepare() method to reload this before
         // the ModelLoader is constructed.
         // client.registerReloadListener(CUSTOM_BLOCK_COLORS);
-        client.registerReloadListener(LIGHTMAP_PROPS);
-        client.registerReloadListener(LIGHTMAPS);
+        client.registerReloadListener(new ResourceIndex.ClearListener(indexedListeners.stream()
+            .map(IdentifiableResourceReloadListener::getFabricId)
+            .toList()));
         // Note: we don't register this as a reload listener here because it
         // has to be loaded before vanilla resources (namely banner textures).
         // In order to do this, we mix in to TextureManager and directly call
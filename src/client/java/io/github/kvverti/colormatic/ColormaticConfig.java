@@ -33,6 +33,13 @@ public final class ColormaticConfig {
 
     public double relativeBlockLightIntensityExponent = -13.0;
 
+    /**
+     * The lightmap updates once per tick at most, so this is the highest useful update rate.
+     */
+    public static final int MAX_LIGHTMAP_UPDATE_RATE = 20;
+
+    public int lightmapUpdateRate = MAX_LIGHTMAP_UPDATE_RATE;
+
     public static double scaled(double relativeBlockLightIntensityExponent) {
         final double LOG_2 = 0.69314718056;
         return LOG_2 * 0.25 * relativeBlockLightIntensityExponent;
@@ -34,6 +34,7 @@ import org.apache.logging.log4j.Logger;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.text.Text;
+import net.minecraft.util.math.MathHelper;
 
 /**
  * This class holds functions that control loading, opening, and persisting
@@ -59,6 +60,7 @@ public final class ColormaticConfigController {
     private static final String BLEND_SKY_LIGHT = "light.blendSkyLight";
     private static final String FLICKER_BLOCK_LIGHT = "light.flickerBlockLight";
     private static final String RELATIVE_BLOCK_LIGHT_INTENSITY = "light.relativeBlockLightIntensity";
+    private static final String LIGHTMAP_UPDATE_RATE = "light.lightmapUpdateRate";
 
     public static void load(ColormaticConfig config) {
         Properties props = new Properties();
@@ -69,6 +71,10 @@ public final class ColormaticConfigController {
             config.blendSkyLight = loadOrDefault(props, BLEND_SKY_LIGHT, Boolean::valueOf, defaults.blendSkyLight);
             config.flickerBlockLight = loadOrDefault(props, FLICKER_BLOCK_LIGHT, Boolean::valueOf, defaults.flickerBlockLight);
             config.relativeBlockLightIntensityExponent = loadOrDefault(props, RELATIVE_BLOCK_LIGHT_INTENSITY, Double::valueOf, defaults.relativeBlockLightIntensityExponent);
+            config.lightmapUpdateRate = MathHelper.clamp(
+                loadOrDefault(props, LIGHTMAP_UPDATE_RATE, Integer::valueOf, defaults.lightmapUpdateRate),
+                1,
+                ColormaticConfig.MAX_LIGHTMAP_UPDATE_RATE);
         } catch(IOException e) {
             log.warn("Could not load configuration settings");
         }
@@ -89,6 +95,7 @@ public final class ColormaticConfigController {
         props.setProperty(BLEND_SKY_LIGHT, String.valueOf(config.blendSkyLight));
         props.setProperty(FLICKER_BLOCK_LIGHT, String.valueOf(config.flickerBlockLight));
         props.setProperty(RELATIVE_BLOCK_LIGHT_INTENSITY, String.valueOf(config.relativeBlockLightIntensityExponent));
+        props.setProperty(LIGHTMAP_UPDATE_RATE, String.valueOf(config.lightmapUpdateRate));
         try {
             configFile.createNewFile();
             props.store(new FileOutputStream(configFile), "Colormatic Config");
@@ -91,7 +91,7 @@ public class ColormaticConfigScreen extends Screen {
                 Text.translatable("colormatic.config.option.blendSkyLight"),
                 (button, value) -> config.blendSkyLight = value
             ));
-        this.addDrawableChild(CyclingButtonWidget
+        var flickerBlockLightBtn = this.addDrawableChild(CyclingButtonWidget
             .onOffBuilder()
             .initially(config.flickerBlockLight)
             .tooltip(value -> Tooltip.of(Text.translatable("colormatic.config.option.flickerBlockLight.desc")))
@@ -107,6 +107,10 @@ public class ColormaticConfigScreen extends Screen {
             blendSkyLightBtn.getX(),
             blendSkyLightBtn.getY() + blendSkyLightBtn.getHeight() + 2 * ColormaticConfigScreen.STANDARD_MARGIN
         ));
+        this.addDrawableChild(new LightmapUpdateRateSlider(
+            flickerBlockLightBtn.getX(),
+            flickerBlockLightBtn.getY() + flickerBlockLightBtn.getHeight() + 2 * ColormaticConfigScreen.STANDARD_MARGIN
+        ));
         // done button
         this.addDrawableChild(ButtonWidget.builder(ScreenTexts.DONE, button -> this.close())
                 .position(centerX - (STANDARD_WIDTH / 2), this.height - 2 * STANDARD_HEIGHT)
@@ -170,4 +174,38 @@ public class ColormaticConfigScreen extends Screen {
             return (1.0 - this.value) * -16.0;
         }
     }
+
+    /**
+     * Slider widget for the lightmap update rate.
+     */
+    private class LightmapUpdateRateSlider extends SliderWidget {
+
+        public LightmapUpdateRateSlider(int x, int y) {
+            super(
+                x,
+                y,
+                ColormaticConfigScreen.STANDARD_WIDTH,
+                ColormaticConfigScreen.STANDARD_HEIGHT,
+                Text.empty(),
+                (ColormaticConfigScreen.this.config.lightmapUpdateRate - 1.0) / (ColormaticConfig.MAX_LIGHTMAP_UPDATE_RATE - 1.0));
+            this.setTooltip(Tooltip.of(Text.translatable("colormatic.config.option.lightmapUpdateRate.desc")));
+            this.updateMessage();
+        }
+
+        @Override
+        protected void updateMessage() {
+            this.setMessage(Text.translatable("colormatic.config.option.lightmapUpdateRate")
+                .append(": ")
+                .append(Text.literal(String.valueOf(this.configValue())).append("/s")));
+        }
+
+        @Override
+        protected void applyValue() {
+            config.lightmapUpdateRate = this.configValue();
+        }
+
+        private int configValue() {
+            return 1 + (int)Math.round(this.value * (ColormaticConfig.MAX_LIGHTMAP_UPDATE_RATE - 1));
+        }
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.kvverti.colormatic.colormap.BiomeColormaps;
+import io.github.kvverti.colormatic.colormap.ColormaticResolver;
+import io.github.kvverti.colormatic.colormap.Lightmap;
+import io.github.kvverti.colormatic.iface.DimensionDataAccess;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.util.Identifier;
+import net.minecraft.world.World;
+
+/**
+ * The Colormatic data for a world's dimension: its ID, lightmap, and sky and fog resolvers.
+ * Client worlds cache their data, which is invalidated whenever lightmaps or colormaps change.
+ */
+public final class DimensionData {
+
+    /**
+     * Incremented whenever cached dimension data goes out of date.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private final int dataGeneration;
+    private final Identifier dimId;
+    @Nullable
+    private final Lightmap lightmap;
+    private final ColormaticResolver skyResolver;
+    private final ColormaticResolver skyFogResolver;
+
+    private DimensionData(int dataGeneration, Identifier dimId) {
+        this.dataGeneration = dataGeneration;
+        this.dimId = dimId;
+        this.lightmap = Lightmaps.get(dimId);
+        this.skyResolver = BiomeColormaps.getTotalSky(dimId);
+        this.skyFogResolver = BiomeColormaps.getTotalSkyFog(dimId);
+    }
+
+    /**
+     * Returns the dimension data for the given world, which is cached for client worlds.
+     */
+    public static DimensionData get(World world) {
+        if(world instanceof DimensionDataAccess access) {
+            return access.colormatic$getDimensionData();
+        }
+        return create(world);
+    }
+
+    /**
+     * Computes the dimension data for the given world.
+     */
+    public static DimensionData create(World world) {
+        // read the generation first so that data computed during an invalidation is recomputed
+        int dataGeneration = generation.get();
+        return new DimensionData(dataGeneration, Colormatic.getDimId(world));
+    }
+
+    /**
+     * Marks all cached dimension data as out of date. Called when lightmaps or colormaps change.
+     */
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns whether this data reflects the current lightmaps and colormaps.
+     */
+    public boolean isCurrent() {
+        return dataGeneration == generation.get();
+    }
+
+    public Identifier getDimId() {
+        return dimId;
+    }
+
+    @Nullable
+    public Lightmap getLightmap() {
+        return lightmap;
+    }
+
+    public ColormaticResolver getSkyResolver() {
+        return skyResolver;
+    }
+
+    public ColormaticResolver getSkyFogResolver() {
+        return skyFogResolver;
+    }
+}
@@ -23,6 +23,7 @@ package io.github.kvverti.colormatic;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import io.github.kvverti.colormatic.colormap.Lightmap;
 
@@ -36,15 +37,46 @@ public final class Lightmaps {
 
     private static final Map<Identifier, Lightmap> lightmaps = new HashMap<>();
 
+    private static final LongAdder updateCount = new LongAdder();
+    private static final LongAdder skippedUpdateCount = new LongAdder();
+
     public static Lightmap get(World world) {
-        return lightmaps.get(Colormatic.getDimId(world));
+        return DimensionData.get(world).getLightmap();
+    }
+
+    public static Lightmap get(Identifier dimId) {
+        return lightmaps.get(dimId);
     }
 
     public static void addLightmap(Identifier id, Lightmap lightmap) {
         lightmaps.put(id, lightmap);
+        DimensionData.invalidateAll();
     }
 
     public static void clearLightmaps() {
         lightmaps.clear();
+        DimensionData.invalidateAll();
+    }
+
+    /**
+     * Records a custom lightmap update, which was skipped if its inputs did not change.
+     * Only counted in debug mode.
+     */
+    public static void countUpdate(boolean skipped) {
+        if(!Colormatic.DEBUG) {
+            return;
+        }
+        updateCount.increment();
+        if(skipped) {
+            skippedUpdateCount.increment();
+        }
+    }
+
+    public static long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    public static long getSkippedUpdateCount() {
+        return skippedUpdateCount.sum();
     }
 }
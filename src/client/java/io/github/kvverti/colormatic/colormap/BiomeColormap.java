@@ -21,14 +21,16 @@
  */
 package io.github.kvverti.colormatic.colormap;
 
-import java.util.Random;
+import java.util.Arrays;
 
 import io.github.kvverti.colormatic.Colormatic;
 import io.github.kvverti.colormatic.properties.ColormapProperties;
 import io.github.kvverti.colormatic.properties.ColormapProperties.ColumnBounds;
 import io.github.kvverti.colormatic.properties.HexColor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
-import net.minecraft.client.texture.NativeImage;
 import net.minecraft.registry.DynamicRegistryManager;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.util.math.BlockPos;
@@ -36,43 +38,41 @@ import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.BlockRenderView;
 import net.minecraft.world.biome.Biome;
 
-public class BiomeColormap implements ColormaticResolver {
+/**
+ * A custom biome colormap. Each format has its own final implementation, so that color lookups
+ * only read the fields that format needs.
+ */
+public abstract sealed class BiomeColormap implements ColormaticResolver
+    permits BiomeColormap.Fixed, BiomeColormap.Vanilla, BiomeColormap.Grid {
+
+    private static final Logger log = LogManager.getLogger();
 
-    private static final Random GRID_RANDOM = new Random(47L);
+    private static final long RANDOM_MULTIPLIER = 0x5DEECE66DL;
+    private static final long RANDOM_ADDEND = 0xBL;
+    private static final long RANDOM_MASK = (1L << 48) - 1;
 
     private final ColormapProperties properties;
-    private final NativeImage colormap;
     private transient final int defaultColor;
+    private transient final ColormapDependency dependency;
     private transient final ExtendedColorResolver resolver;
 
-    public BiomeColormap(ColormapProperties props, NativeImage image) {
-        properties = props;
-        colormap = image;
+    private BiomeColormap(ColormapProperties props, int computedDefaultColor, ColormapDependency dependency) {
+        this.properties = props;
         HexColor col = props.getColor();
-        if(col != null) {
-            defaultColor = col.rgb();
-        } else {
-            defaultColor = computeDefaultColor(props);
-        }
+        this.defaultColor = col != null ? col.rgb() : computedDefaultColor;
+        this.dependency = dependency;
         this.resolver = new ExtendedColorResolver(this);
     }
 
-    private int computeDefaultColor(ColormapProperties props) {
-        switch(props.getFormat()) {
-            case VANILLA:
-                return colormap.getColor(128, 128);
-            case GRID:
-                try {
-                    int x = 0;
-                    int y = MathHelper.clamp(63 - props.getOffset(), 0, colormap.getHeight() - 1);
-                    return colormap.getColor(x, y);
-                } catch(IllegalArgumentException e) {
-                    return 0xffffffff;
-                }
-            case FIXED:
-                return 0xffffffff;
-        }
-        throw new AssertionError();
+    /**
+     * Creates a colormap for the format given in the properties.
+     */
+    public static BiomeColormap create(ColormapProperties props, ColormapImage image) {
+        return switch(props.getFormat()) {
+            case FIXED -> new Fixed(props);
+            case VANILLA -> new Vanilla(props, image);
+            case GRID -> new Grid(props, image);
+        };
     }
 
     public ColormapProperties getProperties() {
@@ -80,49 +80,29 @@ public class BiomeColormap implements ColormaticResolver {
     }
 
     /**
-     * Returns a color given by the custom colormap for the given biome
-     * temperature and humidity.
+     * Returns the inputs the color of this colormap depends on.
+     */
+    public ColormapDependency getDependency() {
+        return dependency;
+    }
+
+    /**
+     * Returns a human readable explanation of this colormap's dependency, for debugging.
+     */
+    public abstract String getDependencyReason();
+
+    /**
+     * Precomputes per-biome data against the given dynamic registry manager.
+     * Called when the dynamic registry manager changes and when this colormap is loaded.
      */
-    private int getColor(double temp, double rain) {
-        rain *= temp;
-        int x = (int)((1.0D - temp) * 255.0D);
-        int y = (int)((1.0D - rain) * 255.0D);
-        if(x >= colormap.getWidth() || y >= colormap.getHeight()) {
-            return 0xffff00ff;
-        }
-        return colormap.getColor(x, y);
+    public void compile(@Nullable DynamicRegistryManager manager) {
     }
 
     /**
      * Returns a color given by the custom colormap for the given biome and position.
      */
     @Override
-    public int getColor(DynamicRegistryManager manager, Biome biome, int posX, int posY, int posZ) {
-        switch(properties.getFormat()) {
-            case VANILLA:
-                double temp = biome.getTemperature();
-                temp = MathHelper.clamp(temp, 0.0f, 1.0f);
-                double rain = MathHelper.clamp(biome.weather.downfall(), 0.0F, 1.0F);
-                return getColor(temp, rain);
-            case GRID:
-                ColumnBounds cb = properties.getColumn(Colormatic.getBiomeKey(manager, biome), manager.get(RegistryKeys.BIOME));
-                // mojang uses this still so I don't know why they marked it for removal
-                @SuppressWarnings("removal")
-                double frac = Biome.FOLIAGE_NOISE.sample(posX * 0.0225, posZ * 0.0225, false);
-                frac = (frac + 1.0) / 2; // normalize
-                int x = cb.column + (int)(frac * cb.count);
-                int y = posY - properties.getOffset();
-                int variance = properties.getVariance();
-                GRID_RANDOM.setSeed(posX * 31L + posZ);
-                y += GRID_RANDOM.nextInt(variance * 2 + 1) - variance;
-                x %= colormap.getWidth();
-                y = MathHelper.clamp(y, 0, colormap.getHeight() - 1);
-                return colormap.getColor(x, y);
-            case FIXED:
-                return getDefaultColor();
-        }
-        throw new AssertionError();
-    }
+    public abstract int getColor(DynamicRegistryManager manager, Biome biome, int posX, int posY, int posZ);
 
     /**
      * Returns the default color given by the custom colormap.
@@ -142,4 +122,263 @@ public class BiomeColormap implements ColormaticResolver {
         }
         return colormap.resolver.resolveExtendedColor(world, pos);
     }
+
+    /**
+     * A colormap with a single color.
+     */
+    static final class Fixed extends BiomeColormap {
+
+        private Fixed(ColormapProperties props) {
+            super(props, 0xffffffff, ColormapDependency.CONSTANT);
+        }
+
+        @Override
+        public String getDependencyReason() {
+            return "fixed format colormap";
+        }
+
+        @Override
+        public int getColor(DynamicRegistryManager manager, Biome biome, int posX, int posY, int posZ) {
+            return getDefaultColor();
+        }
+    }
+
+    /**
+     * A colormap indexed by biome temperature and humidity.
+     */
+    static final class Vanilla extends BiomeColormap {
+
+        private final int width;
+        private final int height;
+        private final ColormapImage image;
+
+        /**
+         * The color of each biome indexed by biome raw ID. Null if this colormap has not been
+         * compiled against a biome registry.
+         */
+        @Nullable
+        private transient volatile CompiledColors biomeColors;
+
+        private Vanilla(ColormapProperties props, ColormapImage image) {
+            super(props, image.getColor(128, 128), ColormapDependency.BIOME_ONLY);
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.image = image;
+        }
+
+        @Override
+        public String getDependencyReason() {
+            return "vanilla format colormap uses biome temperature and humidity";
+        }
+
+        /**
+         * Returns a color given by the custom colormap for the given biome's
+         * temperature and humidity.
+         */
+        private int getColor(Biome biome) {
+            double temp = MathHelper.clamp(biome.getTemperature(), 0.0f, 1.0f);
+            double rain = MathHelper.clamp(biome.weather.downfall(), 0.0F, 1.0F);
+            rain *= temp;
+            int x = (int)((1.0D - temp) * 255.0D);
+            int y = (int)((1.0D - rain) * 255.0D);
+            if(x >= width || y >= height) {
+                return 0xffff00ff;
+            }
+            return image.getPixel(y * width + x);
+        }
+
+        @Override
+        public void compile(@Nullable DynamicRegistryManager manager) {
+            if(manager == null) {
+                biomeColors = null;
+                return;
+            }
+            var biomes = Colormatic.getBiomesByRawId(manager);
+            int[] colors = new int[biomes.length];
+            for(int rawId = 0; rawId < biomes.length; rawId++) {
+                colors[rawId] = getColor(biomes[rawId]);
+            }
+            biomeColors = new CompiledColors(biomes, colors);
+        }
+
+        @Override
+        public int getColor(DynamicRegistryManager manager, Biome biome, int posX, int posY, int posZ) {
+            int rawId = Colormatic.getBiomeRawId(biome);
+            var compiled = biomeColors;
+            if(compiled != null && rawId >= 0 && rawId < compiled.biomes.length && compiled.biomes[rawId] == biome) {
+                return compiled.colors[rawId];
+            }
+            return getColor(biome);
+        }
+
+        /**
+         * The colors of the given biomes, both indexed by raw ID.
+         */
+        private record CompiledColors(Biome[] biomes, int[] colors) {
+        }
+    }
+
+    /**
+     * A colormap with columns assigned to biomes and rows indexed by height.
+     */
+    static final class Grid extends BiomeColormap {
+
+        private final int width;
+        private final int height;
+        private final ColormapImage image;
+        private final int offset;
+        private final int variance;
+
+        /**
+         * The column bounds of each biome indexed by biome raw ID. Biomes this colormap has
+         * no column for are null. Null if this colormap has not been compiled against a
+         * biome registry.
+         */
+        @Nullable
+        private transient volatile CompiledColumns biomeColumns;
+
+        private Grid(ColormapProperties props, ColormapImage image) {
+            super(props, computeDefaultColor(props, image), image.getHeight() == 1 ? ColormapDependency.BIOME_XZ : ColormapDependency.BIOME_XYZ);
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.image = image;
+            this.offset = props.getOffset();
+            this.variance = props.getVariance();
+        }
+
+        private static int computeDefaultColor(ColormapProperties props, ColormapImage image) {
+            try {
+                int x = 0;
+                int y = MathHelper.clamp(63 - props.getOffset(), 0, image.getHeight() - 1);
+                return image.getColor(x, y);
+            } catch(IllegalArgumentException e) {
+                return 0xffffffff;
+            }
+        }
+
+        @Override
+        public String getDependencyReason() {
+            if(height == 1) {
+                // the row is clamped to the image, so a single row image ignores the Y coordinate
+                return "grid format colormap adds noise to the column, but has a single row";
+            }
+            return variance > 0
+                ? "grid format colormap adds noise to the column and chooses a row by height with variance"
+                : "grid format colormap adds noise to the column and chooses a row by height";
+        }
+
+        @Override
+        public void compile(@Nullable DynamicRegistryManager manager) {
+            if(manager == null) {
+                biomeColumns = null;
+                return;
+            }
+            var properties = getProperties();
+            var biomeRegistry = manager.get(RegistryKeys.BIOME);
+            var biomes = Colormatic.getBiomesByRawId(manager);
+            var columns = new ColumnBounds[biomes.length];
+            int unmapped = 0;
+            for(var entry : biomeRegistry.getEntrySet()) {
+                try {
+                    columns[biomeRegistry.getRawId(entry.getValue())] = properties.getColumn(entry.getKey(), biomeRegistry);
+                } catch(IllegalArgumentException | IllegalStateException e) {
+                    // the colormap does not apply to this biome, or the biome has no default column
+                    unmapped++;
+                }
+            }
+            if(unmapped > 0 && properties.getApplicableBiomes().isEmpty()) {
+                log.warn("{}: {} biome(s) could not be mapped to a grid column and will use the default color", properties.getId(), unmapped);
+            }
+            biomeColumns = new CompiledColumns(biomes, columns);
+        }
+
+        @Override
+        public int getColor(DynamicRegistryManager manager, Biome biome, int posX, int posY, int posZ) {
+            var cb = getColumnBounds(manager, biome);
+            if(cb == null) {
+                return getDefaultColor();
+            }
+            return getColumnColor(getImageColumn(cb, posX, posZ), posX, posY, posZ);
+        }
+
+        /**
+         * Chooses the image column of every position in a square area of a single biome. The column does
+         * not depend on the Y coordinate, so it can be shared by every layer of a section. Entries are -1
+         * if the biome has no column.
+         *
+         * @param out The array to store columns in, indexed by `dz * width + dx`.
+         */
+        void getImageColumns(DynamicRegistryManager manager, Biome biome, int originX, int originZ, int width, int[] out) {
+            var cb = getColumnBounds(manager, biome);
+            if(cb == null) {
+                Arrays.fill(out, 0, width * width, -1);
+                return;
+            }
+            for(int dz = 0; dz < width; dz++) {
+                for(int dx = 0; dx < width; dx++) {
+                    out[dz * width + dx] = getImageColumn(cb, originX + dx, originZ + dz);
+                }
+            }
+        }
+
+        /**
+         * Returns the color at the given position in an image column chosen by {@link #getImageColumns}.
+         */
+        int getColumnColor(int column, int posX, int posY, int posZ) {
+            int y = posY - offset;
+            if(variance > 0) {
+                y += gridRandom(posX * 31L + posZ, variance * 2 + 1) - variance;
+            }
+            y = MathHelper.clamp(y, 0, height - 1);
+            return image.getPixel(y * width + column);
+        }
+
+        /**
+         * Returns the image row every column uses at the given Y coordinate, or -1 if the row varies
+         * between columns.
+         */
+        int getRow(int posY) {
+            return variance > 0 ? -1 : MathHelper.clamp(posY - offset, 0, height - 1);
+        }
+
+        @Nullable
+        private ColumnBounds getColumnBounds(DynamicRegistryManager manager, Biome biome) {
+            int rawId = Colormatic.getBiomeRawId(biome);
+            var compiled = biomeColumns;
+            if(compiled != null && rawId >= 0 && rawId < compiled.biomes.length && compiled.biomes[rawId] == biome) {
+                return compiled.columns[rawId];
+            }
+            return getProperties().getColumn(Colormatic.getBiomeKey(manager, biome), manager.get(RegistryKeys.BIOME));
+        }
+
+        private int getImageColumn(ColumnBounds cb, int posX, int posZ) {
+            double frac = FoliageNoiseCache.sample(posX, posZ);
+            return (cb.column + (int)(frac * cb.count)) % width;
+        }
+
+        /**
+         * The column bounds of the given biomes, both indexed by raw ID.
+         */
+        private record CompiledColumns(Biome[] biomes, ColumnBounds[] columns) {
+        }
+    }
+
+    /**
+     * Returns the same value as `new Random(seed).nextInt(bound)`, without shared state or allocation,
+     * so that concurrent callers always agree on the color of a position.
+     */
+    private static int gridRandom(long seed, int bound) {
+        seed = (seed ^ RANDOM_MULTIPLIER) & RANDOM_MASK;
+        seed = (seed * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+        int r = (int)(seed >>> 17);
+        int m = bound - 1;
+        if((bound & m) == 0) {
+            return (int)((bound * (long)r) >> 31);
+        }
+        for(int u = r; u - (r = u % bound) + m < 0; ) {
+            seed = (seed * RANDOM_MULTIPLIER + RANDOM_ADDEND) & RANDOM_MASK;
+            u = (int)(seed >>> 17);
+        }
+        return r;
+    }
 }
@@ -22,11 +22,18 @@
 package io.github.kvverti.colormatic.colormap;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import io.github.kvverti.colormatic.Colormatic;
+import io.github.kvverti.colormatic.DimensionData;
 import io.github.kvverti.colormatic.properties.ColormapProperties;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
@@ -45,75 +52,69 @@ import net.minecraft.world.biome.Biome;
  */
 public final class BiomeColormaps {
 
-    /**
-     * Stores colormaps primarily by block.
-     */
-    private static final ColormapStorage<Block> colormapsByBlock = new ColormapStorage<>(DefaultColormaticResolverProviders.BLOCK);
+    private static final Logger log = LogManager.getLogger();
 
     /**
-     * Stores colormaps primarily by block state.
+     * The current colormaps. A new set of storages is filled and compiled before it is published here, and
+     * is only recompiled afterward, so lookups on other threads never see a partly loaded set.
      */
-    private static final ColormapStorage<BlockState> colormapsByState = new ColormapStorage<>(DefaultColormaticResolverProviders.BLOCK_STATE);
-
-    private static final ColormapStorage<Identifier> skyColormaps = new ColormapStorage<>(DefaultColormaticResolverProviders.SKY);
-    private static final ColormapStorage<Identifier> skyFogColormaps = new ColormapStorage<>(DefaultColormaticResolverProviders.SKY_FOG);
-    private static final ColormapStorage<Fluid> fluidFogColormaps = new ColormapStorage<>(DefaultColormaticResolverProviders.FLUID_FOG);
+    private static volatile Storages storages = new Storages();
 
     private BiomeColormaps() {
     }
 
     public static ColormaticResolver getTotalSky(Identifier dimId) {
-        return skyColormaps.getColormaticResolver(dimId);
+        return storages.skyColormaps.getColormaticResolver(dimId);
     }
 
     public static ColormaticResolver getTotalSkyFog(Identifier dimId) {
-        return skyFogColormaps.getColormaticResolver(dimId);
+        return storages.skyFogColormaps.getColormaticResolver(dimId);
     }
 
     public static BiomeColormap getFluidFog(DynamicRegistryManager manager, Fluid fluid, Biome biome) {
-        return fluidFogColormaps.get(manager, fluid, biome);
+        return storages.fluidFogColormaps.get(manager, fluid, biome);
     }
 
-    public static void add(BiomeColormap colormap) {
-        ColormapProperties props = colormap.getProperties();
-        Set<Identifier> biomes = props.getApplicableBiomes();
-        colormapsByState.addColormap(colormap, props.getApplicableBlockStates(), biomes);
-        colormapsByBlock.addColormap(colormap, props.getApplicableBlocks(), biomes);
-        for(Map.Entry<Identifier, Collection<Identifier>> entry : props.getApplicableSpecialIds().entrySet()) {
-            switch(entry.getKey().toString()) {
-                case "colormatic:sky" -> skyColormaps.addColormap(colormap, entry.getValue(), biomes);
-                case "colormatic:sky_fog" -> skyFogColormaps.addColormap(colormap, entry.getValue(), biomes);
-                case "colormatic:fluid_fog" -> {
-                    Collection<Fluid> fluids = entry.getValue().stream().map(Registries.FLUID::get).collect(Collectors.toList());
-                    fluidFogColormaps.addColormap(colormap, fluids, biomes);
-                }
-            }
+    /**
+     * Replaces every custom colormap with the given colormaps, compiled against the client's current
+     * dynamic registry manager.
+     */
+    public static synchronized void replace(Collection<BiomeColormap> colormaps) {
+        var next = new Storages();
+        for(BiomeColormap colormap : colormaps) {
+            next.add(colormap);
         }
+        next.compile(ExtendedColorResolver.getRegistryManager());
+        storages = next;
+        DimensionData.invalidateAll();
     }
 
-    public static void reset() {
-        colormapsByBlock.clear();
-        colormapsByState.clear();
-        skyColormaps.clear();
-        skyFogColormaps.clear();
-        fluidFogColormaps.clear();
+    /**
+     * Compiles the colormap lookup tables and the custom colormaps themselves against the given
+     * dynamic registry manager. Called when the dynamic registry manager changes.
+     */
+    public static synchronized void compile(@Nullable DynamicRegistryManager manager) {
+        storages.compile(manager);
+        DimensionData.invalidateAll();
     }
 
     /**
      * Returns whether the given state has any custom colormaps.
      */
     public static boolean isCustomColored(BlockState state) {
-        return colormapsByBlock.contains(state.getBlock()) || colormapsByState.contains(state);
+        var storages = BiomeColormaps.storages;
+        return storages.colormapsByBlock.contains(state.getBlock()) || storages.colormapsByState.contains(state);
     }
 
     /**
      * Returns whether any state of the given block has custom colormaps.
      */
     public static boolean isBlockCustomColored(Block block) {
-        if(colormapsByBlock.contains(block)) {
+        var storages = BiomeColormaps.storages;
+        if(storages.colormapsByBlock.contains(block)) {
             return true;
         }
-        return block.getStateManager().getStates().stream().anyMatch(colormapsByState::contains);
+        return block.getStateManager().getStates().stream().anyMatch(storages.colormapsByState::contains);
     }
 
     /**
@@ -121,27 +122,34 @@ public final class BiomeColormaps {
      * which may not be present even if the block state has custom coloring.
      */
     public static boolean isItemCustomColored(BlockState state) {
-        return colormapsByBlock.getFallback(state.getBlock()) != null || colormapsByState.getFallback(state) != null;
+        var storages = BiomeColormaps.storages;
+        return storages.colormapsByBlock.getFallback(state.getBlock()) != null || storages.colormapsByState.getFallback(state) != null;
     }
 
     public static boolean isFluidFogCustomColored(Fluid fluid) {
-        return fluidFogColormaps.contains(fluid);
+        return storages.fluidFogColormaps.contains(fluid);
+    }
+
+    private static ExtendedColorResolver getResolver(BlockState state) {
+        var storages = BiomeColormaps.storages;
+        var resolver = storages.colormapsByState.getResolver(state);
+        if(resolver == null) {
+            resolver = storages.colormapsByBlock.getResolver(state.getBlock());
+        }
+        if(resolver == null) {
+            throw new IllegalArgumentException(String.valueOf(state));
+        }
+        return resolver;
     }
 
     public static int getBiomeColor(BlockState state, BlockRenderView world, BlockPos pos) {
         if(world != null && pos != null) {
-            var resolver = colormapsByState.getResolver(state);
-            if(resolver == null) {
-                resolver = colormapsByBlock.getResolver(state.getBlock());
-            }
-            if(resolver == null) {
-                throw new IllegalArgumentException(String.valueOf(state));
-            }
-            return resolver.resolveExtendedColor(world, pos);
+            return getResolver(state).resolveExtendedColor(world, pos);
         } else {
-            BiomeColormap colormap = colormapsByState.getFallback(state);
+            var storages = BiomeColormaps.storages;
+            BiomeColormap colormap = storages.colormapsByState.getFallback(state);
             if(colormap == null) {
-                colormap = colormapsByBlock.getFallback(state.getBlock());
+                colormap = storages.colormapsByBlock.getFallback(state.getBlock());
             }
             if(colormap != null) {
                 return colormap.getDefaultColor();
@@ -150,4 +158,61 @@ public final class BiomeColormaps {
             }
         }
     }
+
+    /**
+     * One complete set of colormap storages.
+     */
+    private static final class Storages {
+
+        /**
+         * Stores colormaps primarily by block.
+         */
+        final ColormapStorage<Block> colormapsByBlock = new ColormapStorage<>(DefaultColormaticResolverProviders.BLOCK);
+
+        /**
+         * Stores colormaps primarily by block state.
+         */
+        final ColormapStorage<BlockState> colormapsByState = new ColormapStorage<>(DefaultColormaticResolverProviders.BLOCK_STATE);
+
+        final ColormapStorage<Identifier> skyColormaps = new ColormapStorage<>(DefaultColormaticResolverProviders.SKY);
+        final ColormapStorage<Identifier> skyFogColormaps = new ColormapStorage<>(DefaultColormaticResolverProviders.SKY_FOG);
+        final ColormapStorage<Fluid> fluidFogColormaps = new ColormapStorage<>(DefaultColormaticResolverProviders.FLUID_FOG);
+
+        void add(BiomeColormap colormap) {
+            ColormapProperties props = colormap.getProperties();
+            Set<Identifier> biomes = props.getApplicableBiomes();
+            colormapsByState.addColormap(colormap, props.getApplicableBlockStates(), biomes);
+            colormapsByBlock.addColormap(colormap, props.getApplicableBlocks(), biomes);
+            for(Map.Entry<Identifier, Collection<Identifier>> entry : props.getApplicableSpecialIds().entrySet()) {
+                switch(entry.getKey().toString()) {
+                    case "colormatic:sky" -> skyColormaps.addColormap(colormap, entry.getValue(), biomes);
+                    case "colormatic:sky_fog" -> skyFogColormaps.addColormap(colormap, entry.getValue(), biomes);
+                    case "colormatic:fluid_fog" -> {
+                        Collection<Fluid> fluids = entry.getValue().stream().map(Registries.FLUID::get).collect(Collectors.toList());
+                        fluidFogColormaps.addColormap(colormap, fluids, biomes);
+                    }
+                }
+            }
+        }
+
+        void compile(@Nullable DynamicRegistryManager manager) {
+            colormapsByBlock.compile(manager);
+            colormapsByState.compile(manager);
+            skyColormaps.compile(manager);
+            skyFogColormaps.compile(manager);
+            fluidFogColormaps.compile(manager);
+            Set<BiomeColormap> colormaps = Collections.newSetFromMap(new IdentityHashMap<>());
+            colormapsByBlock.collectColormaps(colormaps);
+            colormapsByState.collectColormaps(colormaps);
+            skyColormaps.collectColormaps(colormaps);
+            skyFogColormaps.collectColormaps(colormaps);
+            fluidFogColormaps.collectColormaps(colormaps);
+            for(BiomeColormap colormap : colormaps) {
+                colormap.compile(manager);
+                if(Colormatic.DEBUG) {
+                    log.info("{}: depends on {} ({})", colormap.getProperties().getId(), colormap.getDependency(), colormap.getDependencyReason());
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.colormap;
+
+/**
+ * The inputs a colormap's color depends on, ordered from cheapest to most expensive to compute.
+ * Resolvers use this to decide how much work can be skipped.
+ */
+public enum ColormapDependency {
+    /**
+     * The color is the same everywhere.
+     */
+    CONSTANT,
+    /**
+     * The color depends only on the biome.
+     */
+    BIOME_ONLY,
+    /**
+     * The color depends on the biome and the horizontal position.
+     */
+    BIOME_XZ,
+    /**
+     * The color depends on the biome and the full position.
+     */
+    BIOME_XYZ;
+
+    public boolean dependsOnPosition() {
+        return this.compareTo(BIOME_XZ) >= 0;
+    }
+
+    public boolean dependsOnY() {
+        return this == BIOME_XYZ;
+    }
+
+    /**
+     * Returns the dependency of a color computed from colors with this and the given dependency.
+     */
+    public ColormapDependency widen(ColormapDependency other) {
+        return this.compareTo(other) >= 0 ? this : other;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.colormap;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import net.minecraft.client.texture.NativeImage;
+
+/**
+ * An on-heap copy of a colormap image, with pixels stored as ARGB in row major order. Images with few
+ * distinct colors are stored as 8 or 16 bit indices into a palette, whichever takes the least memory.
+ */
+public final class ColormapImage {
+
+    private static final int MAX_BYTE_PALETTE = 1 << 8;
+    private static final int MAX_SHORT_PALETTE = 1 << 16;
+
+    /**
+     * Serialization format constants. The version must change whenever the format does.
+     */
+    private static final int MAGIC = 0x434d4943;
+    private static final int VERSION = 1;
+    private static final byte LAYOUT_RAW = 0;
+    private static final byte LAYOUT_BYTE = 1;
+    private static final byte LAYOUT_SHORT = 2;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Exactly one of these holds the pixel data. The index arrays index into the palette.
+     */
+    @Nullable
+    private final int[] pixels;
+    @Nullable
+    private final byte[] byteIndices;
+    @Nullable
+    private final short[] shortIndices;
+    @Nullable
+    private final int[] palette;
+
+    public ColormapImage(int width, int height, int[] pixels) {
+        if(pixels.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + pixels.length);
+        }
+        this.width = width;
+        this.height = height;
+        var colorIndices = new Int2IntOpenHashMap();
+        var colors = new IntArrayList();
+        for(int pixel : pixels) {
+            if(!colorIndices.containsKey(pixel)) {
+                if(colors.size() == MAX_SHORT_PALETTE) {
+                    colors = null;
+                    break;
+                }
+                colorIndices.put(pixel, colors.size());
+                colors.add(pixel);
+            }
+        }
+        int n = pixels.length;
+        long rawBytes = 4L * n;
+        long byteBytes = colors != null && colors.size() <= MAX_BYTE_PALETTE ? n + 4L * colors.size() : Long.MAX_VALUE;
+        long shortBytes = colors != null ? 2L * n + 4L * colors.size() : Long.MAX_VALUE;
+        if(byteBytes < rawBytes && byteBytes <= shortBytes) {
+            byte[] indices = new byte[n];
+            for(int i = 0; i < n; i++) {
+                indices[i] = (byte)colorIndices.get(pixels[i]);
+            }
+            this.pixels = null;
+            this.byteIndices = indices;
+            this.shortIndices = null;
+            this.palette = colors.toIntArray();
+        } else if(shortBytes < rawBytes) {
+            short[] indices = new short[n];
+            for(int i = 0; i < n; i++) {
+                indices[i] = (short)colorIndices.get(pixels[i]);
+            }
+            this.pixels = null;
+            this.byteIndices = null;
+            this.shortIndices = indices;
+            this.palette = colors.toIntArray();
+        } else {
+            this.pixels = pixels;
+            this.byteIndices = null;
+            this.shortIndices = null;
+            this.palette = null;
+        }
+    }
+
+    private ColormapImage(int width, int height, @Nullable int[] pixels, @Nullable byte[] byteIndices, @Nullable short[] shortIndices, @Nullable int[] palette) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.byteIndices = byteIndices;
+        this.shortIndices = shortIndices;
+        this.palette = palette;
+    }
+
+    /**
+     * Copies the given image into a new colormap image, converting its pixels to ARGB. The native
+     * image is not closed.
+     */
+    public static ColormapImage copyOf(NativeImage image) {
+        return new ColormapImage(image.getWidth(), image.getHeight(), copyPixels(image, true));
+    }
+
+    /**
+     * Copies the pixels of an RGBA image in row major order with a single bulk copy. If `argb` is set,
+     * the pixels are converted to ARGB, otherwise they keep the order {@link NativeImage#getColor(int, int)}
+     * returns them in. The native image is not closed.
+     */
+    public static int[] copyPixels(NativeImage image, boolean argb) {
+        if(image.getFormat() != NativeImage.Format.RGBA) {
+            throw new IllegalArgumentException("Expected an RGBA image, got " + image.getFormat());
+        }
+        if(image.pointer == 0L) {
+            throw new IllegalStateException("Image is not allocated");
+        }
+        int[] pixels = new int[image.getWidth() * image.getHeight()];
+        MemoryUtil.memIntBuffer(image.pointer, pixels.length).get(pixels);
+        // NativeImage pixels are ABGR on little endian machines
+        if(argb && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            swapRedBlue(pixels);
+        }
+        return pixels;
+    }
+
+    /**
+     * Swaps the red and blue channels of every pixel. This is a simple loop over the array so that
+     * the JIT can vectorize it.
+     */
+    private static void swapRedBlue(int[] pixels) {
+        for(int i = 0; i < pixels.length; i++) {
+            int pix = pixels[i];
+            pixels[i] = (pix & 0xff00ff00) | ((pix >>> 16) & 0xff) | ((pix & 0xff) << 16);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of bytes of pixel data this image holds.
+     */
+    public long getByteSize() {
+        if(byteIndices != null) {
+            return byteIndices.length + 4L * palette.length;
+        }
+        if(shortIndices != null) {
+            return 2L * shortIndices.length + 4L * palette.length;
+        }
+        return 4L * pixels.length;
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeTo(ByteBuffer)} writes.
+     */
+    public int getSerializedSize() {
+        // magic, version, width, height, layout, and palette length, followed by the palette and pixel data
+        return 4 * 4 + 1 + 4 + Math.toIntExact(getByteSize());
+    }
+
+    /**
+     * Writes this image to the given buffer in a compact binary format.
+     */
+    public void writeTo(ByteBuffer buf) {
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt(width);
+        buf.putInt(height);
+        if(byteIndices != null) {
+            buf.put(LAYOUT_BYTE);
+            buf.putInt(palette.length);
+            buf.asIntBuffer().put(palette);
+            buf.position(buf.position() + 4 * palette.length);
+            buf.put(byteIndices);
+        } else if(shortIndices != null) {
+            buf.put(LAYOUT_SHORT);
+            buf.putInt(palette.length);
+            buf.asIntBuffer().put(palette);
+            buf.position(buf.position() + 4 * palette.length);
+            buf.asShortBuffer().put(shortIndices);
+            buf.position(buf.position() + 2 * shortIndices.length);
+        } else {
+            buf.put(LAYOUT_RAW);
+            buf.putInt(0);
+            buf.asIntBuffer().put(pixels);
+            buf.position(buf.position() + 4 * pixels.length);
+        }
+    }
+
+    /**
+     * Reads an image written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @throws IllegalArgumentException if the data is malformed or from a different format version
+     */
+    public static ColormapImage readFrom(ByteBuffer buf) {
+        try {
+            if(buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IllegalArgumentException("Unknown colormap image format");
+            }
+            int width = buf.getInt();
+            int height = buf.getInt();
+            byte layout = buf.get();
+            int paletteLength = buf.getInt();
+            if(width < 0 || height < 0 || paletteLength < 0 || paletteLength > MAX_SHORT_PALETTE) {
+                throw new IllegalArgumentException("Invalid colormap image header");
+            }
+            int n = Math.multiplyExact(width, height);
+            // check lengths before allocating so corrupt headers cannot request huge arrays
+            requireRemaining(buf, 4L * paletteLength);
+            int[] palette = new int[paletteLength];
+            buf.asIntBuffer().get(palette);
+            buf.position(buf.position() + 4 * paletteLength);
+            switch(layout) {
+                case LAYOUT_RAW -> {
+                    requireRemaining(buf, 4L * n);
+                    int[] pixels = new int[n];
+                    buf.asIntBuffer().get(pixels);
+                    return new ColormapImage(width, height, pixels, null, null, null);
+                }
+                case LAYOUT_BYTE -> {
+                    requireRemaining(buf, n);
+                    byte[] indices = new byte[n];
+                    buf.get(indices);
+                    for(byte index : indices) {
+                        if((index & 0xff) >= paletteLength) {
+                            throw new IllegalArgumentException("Palette index out of bounds");
+                        }
+                    }
+                    return new ColormapImage(width, height, null, indices, null, palette);
+                }
+                case LAYOUT_SHORT -> {
+                    requireRemaining(buf, 2L * n);
+                    short[] indices = new short[n];
+                    buf.asShortBuffer().get(indices);
+                    for(short index : indices) {
+                        if((index & 0xffff) >= paletteLength) {
+                            throw new IllegalArgumentException("Palette index out of bounds");
+                        }
+                    }
+                    return new ColormapImage(width, height, null, null, indices, palette);
+                }
+                default -> throw new IllegalArgumentException("Unknown colormap image layout " + layout);
+            }
+        } catch(BufferUnderflowException | ArithmeticException e) {
+            throw new IllegalArgumentException("Truncated colormap image", e);
+        }
+    }
+
+    private static void requireRemaining(ByteBuffer buf, long bytes) {
+        if(buf.remaining() < bytes) {
+            throw new IllegalArgumentException("Truncated colormap image");
+        }
+    }
+
+    /**
+     * Returns the ARGB color of the pixel at `y * width + x`, without bounds checks beyond the array's.
+     */
+    int getPixel(int index) {
+        if(byteIndices != null) {
+            return palette[byteIndices[index] & 0xff];
+        }
+        if(shortIndices != null) {
+            return palette[shortIndices[index] & 0xffff];
+        }
+        return pixels[index];
+    }
+
+    /**
+     * Returns the ARGB color at the given coordinates.
+     *
+     * @throws IllegalArgumentException if the coordinates are outside the image
+     */
+    public int getColor(int x, int y) {
+        if(x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException(String.format("(%s, %s) outside of image bounds (%s, %s)", x, y, width, height));
+        }
+        return getPixel(y * width + x);
+    }
+}
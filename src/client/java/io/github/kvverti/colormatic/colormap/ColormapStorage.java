@@ -25,18 +25,28 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import io.github.kvverti.colormatic.Colormatic;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.jetbrains.annotations.Nullable;
 
+import net.minecraft.registry.RegistryKeys;
 import net.minecraft.util.Identifier;
 import net.minecraft.registry.DynamicRegistryManager;
 import net.minecraft.world.biome.Biome;
 
 /**
  * Storage for colormaps. This separates storage by biome from fallback colormaps not specified by biome.
+ * Once compiled against a biome registry, lookups go through a flat table indexed by key index and
+ * biome raw ID instead.
+ *
+ * <p>Colormaps are only added before the storage is shared with other threads. Afterward, only the
+ * compiled table, which is replaced as a whole, and the default resolvers, which are created on demand,
+ * change.
  */
 final class ColormapStorage<K> {
     private final Table<K, Identifier, BiomeColormap> colormaps;
@@ -45,12 +55,25 @@ final class ColormapStorage<K> {
     private final Map<K, ColormaticResolver> defaultResolvers;
     private final ColormaticResolverProvider<K> defaultResolverProvider;
 
+    /**
+     * Dense indices of every key that has a colormap, in insertion order.
+     */
+    private final Object2IntMap<K> keyIndices;
+
+    /**
+     * The compiled lookup table, or null if this storage has not been compiled since it was last modified.
+     */
+    @Nullable
+    private volatile CompiledTable compiled;
+
     ColormapStorage(ColormaticResolverProvider<K> defaultResolverProvider) {
         this.colormaps = HashBasedTable.create();
         this.fallbackColormaps = new HashMap<>();
         this.resolvers = new HashMap<>();
-        this.defaultResolvers = new HashMap<>();
+        this.defaultResolvers = new ConcurrentHashMap<>();
         this.defaultResolverProvider = defaultResolverProvider;
+        this.keyIndices = new Object2IntOpenHashMap<>();
+        this.keyIndices.defaultReturnValue(-1);
     }
 
     /**
@@ -58,6 +81,28 @@ final class ColormapStorage<K> {
      */
     @Nullable
     public BiomeColormap get(DynamicRegistryManager manager, K key, Biome biome) {
+        int keyIndex = this.keyIndices.getInt(key);
+        if(keyIndex < 0) {
+            return null;
+        }
+        return get(manager, keyIndex, key, biome);
+    }
+
+    /**
+     * Retrieves the colormap that applies to the given key and biome, if any. The key index must be
+     * the one returned by {@link #getKeyIndex(Object)} for the given key.
+     */
+    @Nullable
+    BiomeColormap get(DynamicRegistryManager manager, int keyIndex, K key, Biome biome) {
+        var table = this.compiled;
+        if(table != null) {
+            int rawId = Colormatic.getBiomeRawId(biome);
+            var biomes = table.biomes;
+            // the raw ID may belong to another registry than the table while the registry changes
+            if(rawId >= 0 && rawId < biomes.length && biomes[rawId] == biome) {
+                return table.colormaps[keyIndex * biomes.length + rawId];
+            }
+        }
         BiomeColormap res = this.colormaps.get(key, Colormatic.getBiomeId(manager, biome));
         if(res == null) {
             res = this.fallbackColormaps.get(key);
@@ -65,6 +110,30 @@ final class ColormapStorage<K> {
         return res;
     }
 
+    /**
+     * Returns the dense index of the given key, or -1 if the key has no colormaps.
+     */
+    int getKeyIndex(K key) {
+        return this.keyIndices.getInt(key);
+    }
+
+    /**
+     * Returns the inputs the colors for the given key depend on, taking every biome into account.
+     */
+    ColormapDependency getDependency(K key) {
+        var fallback = this.fallbackColormaps.get(key);
+        // biomes without a colormap use the default resolver, which may depend on anything
+        var dependency = fallback != null ? fallback.getDependency() : ColormapDependency.BIOME_XYZ;
+        var byBiome = this.colormaps.row(key);
+        if(!byBiome.isEmpty()) {
+            dependency = dependency.widen(ColormapDependency.BIOME_ONLY);
+        }
+        for(BiomeColormap colormap : byBiome.values()) {
+            dependency = dependency.widen(colormap.getDependency());
+        }
+        return dependency;
+    }
+
     /**
      * Retrieves a colormap that applies to the given key, independent of biome.
      */
@@ -93,7 +162,15 @@ final class ColormapStorage<K> {
         return !colormaps.row(key).isEmpty() || fallbackColormaps.containsKey(key);
     }
 
+    /**
+     * Adds a colormap for the given keys and biomes. Must not be called once the storage is in use.
+     */
     public void addColormap(BiomeColormap colormap, Collection<? extends K> keys, Set<? extends Identifier> biomes) {
+        for(K key : keys) {
+            if(!keyIndices.containsKey(key)) {
+                keyIndices.put(key, keyIndices.size());
+            }
+        }
         if(biomes.isEmpty()) {
             for(K key : keys) {
                 fallbackColormaps.put(key, colormap);
@@ -109,10 +186,48 @@ final class ColormapStorage<K> {
         }
     }
 
-    public void clear() {
-        colormaps.clear();
-        fallbackColormaps.clear();
-        resolvers.clear();
-        defaultResolvers.clear();
+    /**
+     * Compiles the stored colormaps into a flat table indexed by key index and biome raw ID, with
+     * fallback colormaps merged in. Called when the dynamic registry manager changes and after
+     * colormaps are reloaded.
+     */
+    public void compile(@Nullable DynamicRegistryManager manager) {
+        if(manager == null) {
+            this.compiled = null;
+            return;
+        }
+        var biomeRegistry = manager.get(RegistryKeys.BIOME);
+        var biomes = Colormatic.getBiomesByRawId(manager);
+        int biomeCount = biomes.length;
+        var biomeIds = new Identifier[biomeCount];
+        for(int rawId = 0; rawId < biomeCount; rawId++) {
+            biomeIds[rawId] = biomeRegistry.getId(biomes[rawId]);
+        }
+        var table = new BiomeColormap[keyIndices.size() * biomeCount];
+        for(var entry : keyIndices.object2IntEntrySet()) {
+            var byBiome = colormaps.row(entry.getKey());
+            var fallback = fallbackColormaps.get(entry.getKey());
+            int base = entry.getIntValue() * biomeCount;
+            for(int rawId = 0; rawId < biomeCount; rawId++) {
+                var colormap = byBiome.get(biomeIds[rawId]);
+                table[base + rawId] = colormap != null ? colormap : fallback;
+            }
+        }
+        this.compiled = new CompiledTable(table, biomes);
+    }
+
+    /**
+     * Adds every stored colormap to the given collection.
+     */
+    void collectColormaps(Collection<? super BiomeColormap> out) {
+        out.addAll(colormaps.values());
+        out.addAll(fallbackColormaps.values());
+    }
+
+    /**
+     * A flat colormap table, where the colormap for a key and biome is at `keyIndex * biomes.length + biomeRawId`.
+     * The table applies only to the biomes it was compiled for.
+     */
+    private record CompiledTable(BiomeColormap[] colormaps, Biome[] biomes) {
     }
 }
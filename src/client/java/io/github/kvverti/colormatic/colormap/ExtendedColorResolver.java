@@ -21,13 +21,22 @@
  */
 package io.github.kvverti.colormatic.colormap;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import io.github.kvverti.colormatic.Colormatic;
 import org.jetbrains.annotations.Nullable;
 
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.registry.DynamicRegistryManager;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.world.BlockRenderView;
+import net.minecraft.world.WorldView;
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.ColorResolver;
+import net.minecraft.world.chunk.ChunkStatus;
 
 public final class ExtendedColorResolver implements ColorResolver {
 
@@ -44,32 +53,340 @@ public final class ExtendedColorResolver implements ColorResolver {
     private final ThreadLocal<CoordinateY> posY;
     private final ColormaticResolver wrappedResolver;
 
+    /**
+     * Looks up the colormap used for a biome, or returns null if a fallback resolver is used.
+     */
+    private final Function<Biome, BiomeColormap> colormapLookup;
+
+    /**
+     * The inputs the resolved color depends on. The Y coordinate is only tracked if needed.
+     */
+    private final ColormapDependency dependency;
+
+    /**
+     * For constant resolvers only, the resolved color.
+     */
+    private final int constantColor;
+
+    /**
+     * The number of sections resolved in bulk, and the number of those which lie in a single biome.
+     * Only counted in debug mode.
+     */
+    private static final LongAdder sectionCount = new LongAdder();
+    private static final LongAdder uniformSectionCount = new LongAdder();
+
     <K> ExtendedColorResolver(ColormapStorage<K> storage, K key, ColormaticResolver fallback) {
         this.posY = ThreadLocal.withInitial(CoordinateY::new);
-        this.wrappedResolver = createResolver(storage, key, fallback);
+        this.wrappedResolver = new StorageResolver<>(storage, key, fallback);
+        int keyIndex = storage.getKeyIndex(key);
+        this.colormapLookup = biome -> storage.get(registryManager, keyIndex, key, biome);
+        this.dependency = storage.getDependency(key);
+        this.constantColor = dependency == ColormapDependency.CONSTANT ? 0xfffefefe & storage.getFallback(key).getDefaultColor() : 0;
     }
 
     ExtendedColorResolver(ColormaticResolver wrappedResolver) {
         this.posY = ThreadLocal.withInitial(CoordinateY::new);
         this.wrappedResolver = wrappedResolver;
+        if(wrappedResolver instanceof BiomeColormap colormap) {
+            this.colormapLookup = biome -> colormap;
+            this.dependency = colormap.getDependency();
+            this.constantColor = 0xfffefefe & colormap.getDefaultColor();
+        } else {
+            this.colormapLookup = biome -> null;
+            this.dependency = ColormapDependency.BIOME_XYZ;
+            this.constantColor = 0;
+        }
     }
 
     /**
      * Prefer to use this instead of {@link BlockRenderView#getColor(BlockPos, ColorResolver)}.
      */
     public int resolveExtendedColor(BlockRenderView world, BlockPos pos) {
-        this.posY.get().y = pos.getY();
+        if(dependency == ColormapDependency.CONSTANT) {
+            return blendConstant(constantColor, MinecraftClient.getInstance().options.getBiomeBlendRadius().getValue());
+        }
+        if(dependency.dependsOnY()) {
+            this.posY.get().y = pos.getY();
+        }
         return world.getColor(pos, this);
     }
 
+    /**
+     * Returns the result of blending the given color with itself, which only drops the alpha channel
+     * when blending is enabled.
+     */
+    private static int blendConstant(int color, int radius) {
+        return radius == 0 ? color : color & 0xffffff;
+    }
+
+    public ColormapDependency getDependency() {
+        return dependency;
+    }
+
+    /**
+     * Computes the blended color of every block in a chunk section using the client's biome blend radius.
+     *
+     * @see #resolveSectionColors(WorldView, int, int, int, int, int[])
+     */
+    public void resolveSectionColors(WorldView world, int sectionX, int sectionY, int sectionZ, int[] out) {
+        int radius = MinecraftClient.getInstance().options.getBiomeBlendRadius().getValue();
+        resolveSectionColors(world, sectionX, sectionY, sectionZ, radius, out);
+    }
+
+    /**
+     * Computes the blended color of every block in a chunk section at once, with the same result as resolving
+     * each block individually. Each biome cell around the section is sampled once per Y level, and blending
+     * uses a separable sliding window sum, so the cost per block does not depend on the blend radius.
+     *
+     * @param out The array to store colors in, indexed by `y << 8 | z << 4 | x`. For resolvers that do not
+     *            depend on Y, the array may hold only the bottom layer of 256 colors.
+     */
+    public void resolveSectionColors(WorldView world, int sectionX, int sectionY, int sectionZ, int radius, int[] out) {
+        int originX = ChunkSectionPos.getBlockCoord(sectionX) - radius;
+        int originY = ChunkSectionPos.getBlockCoord(sectionY);
+        int originZ = ChunkSectionPos.getBlockCoord(sectionZ) - radius;
+        int width = 16 + 2 * radius;
+        int sectionLayers = out.length >> 8;
+        if(Colormatic.DEBUG) {
+            sectionCount.increment();
+        }
+        if(dependency == ColormapDependency.CONSTANT) {
+            Arrays.fill(out, blendConstant(constantColor, radius));
+            return;
+        }
+        var uniformBiome = registryManager != null ? getUniformBiome(world, sectionX, sectionY, sectionZ, radius) : null;
+        if(uniformBiome != null) {
+            if(Colormatic.DEBUG) {
+                uniformSectionCount.increment();
+            }
+            var colormap = colormapLookup.apply(uniformBiome);
+            var biomeDependency = colormap != null ? colormap.getDependency() : ColormapDependency.BIOME_XYZ;
+            if(!biomeDependency.dependsOnPosition()) {
+                // every sample is the same color, so the blended color is too
+                int color = 0xfffefefe & colormap.getColor(registryManager, uniformBiome, originX, originY, originZ);
+                Arrays.fill(out, blendConstant(color, radius));
+                return;
+            }
+            // position dependent colors still vary, but no biome lookups are needed
+            var buffers = new BlendBuffers(radius);
+            if(colormap instanceof BiomeColormap.Grid grid) {
+                resolveGridSection(grid, uniformBiome, originX, originY, originZ, radius, sectionLayers, buffers, out);
+                return;
+            }
+            int layers = biomeDependency.dependsOnY() ? sectionLayers : 1;
+            for(int dy = 0; dy < layers; dy++) {
+                int y = originY + dy;
+                for(int dz = 0; dz < width; dz++) {
+                    for(int dx = 0; dx < width; dx++) {
+                        buffers.samples[dz * width + dx] = 0xfffefefe & wrappedResolver.getColor(registryManager, uniformBiome, originX + dx, y, originZ + dz);
+                    }
+                }
+                blendLayer(buffers, radius, out, dy << 8);
+            }
+            // without Y dependence, every layer is the same as the first
+            for(int dy = layers; dy < sectionLayers; dy++) {
+                System.arraycopy(out, 0, out, dy << 8, 256);
+            }
+            return;
+        }
+        var buffers = new BlendBuffers(radius);
+        var pos = new BlockPos.Mutable();
+        for(int dy = 0; dy < sectionLayers; dy++) {
+            int y = originY + dy;
+            for(int dz = 0; dz < width; dz++) {
+                for(int dx = 0; dx < width; dx++) {
+                    pos.set(originX + dx, y, originZ + dz);
+                    var biome = world.getBiome(pos).value();
+                    buffers.samples[dz * width + dx] = 0xfffefefe & wrappedResolver.getColor(registryManager, biome, pos.getX(), y, pos.getZ());
+                }
+            }
+            blendLayer(buffers, radius, out, dy << 8);
+        }
+    }
+
+    /**
+     * Computes the colors of a section in a single biome with a grid colormap. The image column of each
+     * sampled position is chosen once and reused by every layer, and a layer is copied from the one below
+     * when both use the same image row.
+     */
+    private void resolveGridSection(BiomeColormap.Grid grid, Biome biome, int originX, int originY, int originZ, int radius, int sectionLayers, BlendBuffers buffers, int[] out) {
+        int width = 16 + 2 * radius;
+        int[] columns = new int[width * width];
+        grid.getImageColumns(registryManager, biome, originX, originZ, width, columns);
+        int defaultColor = 0xfffefefe & grid.getDefaultColor();
+        int layers = grid.getDependency().dependsOnY() ? sectionLayers : 1;
+        int lastRow = -1;
+        for(int dy = 0; dy < layers; dy++) {
+            int y = originY + dy;
+            int row = grid.getRow(y);
+            if(row >= 0 && row == lastRow) {
+                System.arraycopy(out, (dy - 1) << 8, out, dy << 8, 256);
+                continue;
+            }
+            lastRow = row;
+            for(int dz = 0; dz < width; dz++) {
+                for(int dx = 0; dx < width; dx++) {
+                    int i = dz * width + dx;
+                    int column = columns[i];
+                    buffers.samples[i] = column < 0 ? defaultColor : 0xfffefefe & grid.getColumnColor(column, originX + dx, y, originZ + dz);
+                }
+            }
+            blendLayer(buffers, radius, out, dy << 8);
+        }
+        for(int dy = layers; dy < sectionLayers; dy++) {
+            System.arraycopy(out, 0, out, dy << 8, 256);
+        }
+    }
+
+    /**
+     * Returns the biome of every block whose color contributes to the given section, or null if the blocks
+     * lie in more than one biome or their chunks are not loaded. This checks the biome containers of each
+     * chunk section that biome lookups around the given section may read from.
+     */
+    @Nullable
+    private static Biome getUniformBiome(WorldView world, int sectionX, int sectionY, int sectionZ, int radius) {
+        // biome lookups may be offset by up to two biome cells, so check every chunk they could reach
+        int reach = radius + 8;
+        int minChunkX = ChunkSectionPos.getSectionCoord(ChunkSectionPos.getBlockCoord(sectionX) - reach);
+        int maxChunkX = ChunkSectionPos.getSectionCoord(ChunkSectionPos.getBlockCoord(sectionX) + 15 + reach);
+        int minChunkZ = ChunkSectionPos.getSectionCoord(ChunkSectionPos.getBlockCoord(sectionZ) - reach);
+        int maxChunkZ = ChunkSectionPos.getSectionCoord(ChunkSectionPos.getBlockCoord(sectionZ) + 15 + reach);
+        // biome lookups clamp to the world's height
+        int bottomY = world.getBottomSectionCoord();
+        int topY = world.getTopSectionCoord() - 1;
+        int minSectionY = Math.max(bottomY, Math.min(sectionY - 1, topY));
+        int maxSectionY = Math.max(bottomY, Math.min(sectionY + 1, topY));
+        Biome biome = null;
+        for(int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for(int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                var chunk = world.getChunk(chunkX, chunkZ, ChunkStatus.BIOMES, false);
+                if(chunk == null) {
+                    return null;
+                }
+                for(int y = minSectionY; y <= maxSectionY; y++) {
+                    var container = chunk.getSection(chunk.sectionCoordToIndex(y)).getBiomeContainer();
+                    if(biome == null) {
+                        biome = container.get(0, 0, 0).value();
+                    }
+                    var expected = biome;
+                    if(container.hasAny(entry -> entry.value() != expected)) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return biome;
+    }
+
+    public static long getSectionCount() {
+        return sectionCount.sum();
+    }
+
+    public static long getUniformSectionCount() {
+        return uniformSectionCount.sum();
+    }
+
+    /**
+     * Blends one 16x16 layer of a section from the samples around it, the same way
+     * `ClientWorld.calculateColor` does.
+     */
+    private static void blendLayer(BlendBuffers buffers, int radius, int[] out, int layer) {
+        int[] samples = buffers.samples;
+        if(radius == 0) {
+            for(int i = 0; i < 256; i++) {
+                out[layer | i] = samples[i];
+            }
+            return;
+        }
+        int diameter = 2 * radius + 1;
+        int width = 16 + 2 * radius;
+        // horizontal pass: sums over X windows for every sampled row
+        int[] sumR = buffers.sumR;
+        int[] sumG = buffers.sumG;
+        int[] sumB = buffers.sumB;
+        for(int dz = 0; dz < width; dz++) {
+            int row = dz * width;
+            int r = 0, g = 0, b = 0;
+            for(int dx = 0; dx < diameter; dx++) {
+                int color = samples[row + dx];
+                r += (color >> 16) & 0xff;
+                g += (color >> 8) & 0xff;
+                b += color & 0xff;
+            }
+            for(int dx = 0; ; dx++) {
+                sumR[dz * 16 + dx] = r;
+                sumG[dz * 16 + dx] = g;
+                sumB[dz * 16 + dx] = b;
+                if(dx == 15) {
+                    break;
+                }
+                int added = samples[row + dx + diameter];
+                int removed = samples[row + dx];
+                r += ((added >> 16) & 0xff) - ((removed >> 16) & 0xff);
+                g += ((added >> 8) & 0xff) - ((removed >> 8) & 0xff);
+                b += (added & 0xff) - (removed & 0xff);
+            }
+        }
+        // vertical pass: sums over Z windows of the horizontal sums
+        int count = diameter * diameter;
+        for(int dx = 0; dx < 16; dx++) {
+            int r = 0, g = 0, b = 0;
+            for(int dz = 0; dz < diameter; dz++) {
+                r += sumR[dz * 16 + dx];
+                g += sumG[dz * 16 + dx];
+                b += sumB[dz * 16 + dx];
+            }
+            for(int dz = 0; ; dz++) {
+                out[layer | dz << 4 | dx] = (r / count & 0xff) << 16 | (g / count & 0xff) << 8 | b / count & 0xff;
+                if(dz == 15) {
+                    break;
+                }
+                int added = (dz + diameter) * 16 + dx;
+                int removed = dz * 16 + dx;
+                r += sumR[added] - sumR[removed];
+                g += sumG[added] - sumG[removed];
+                b += sumB[added] - sumB[removed];
+            }
+        }
+    }
+
+    /**
+     * Scratch arrays for blending the layers of one section, allocated once per section.
+     */
+    private static final class BlendBuffers {
+        final int[] samples;
+        final int[] sumR;
+        final int[] sumG;
+        final int[] sumB;
+
+        BlendBuffers(int radius) {
+            int width = 16 + 2 * radius;
+            this.samples = new int[width * width];
+            // the horizontal sums are only needed when blending
+            int sumLength = radius == 0 ? 0 : width * 16;
+            this.sumR = new int[sumLength];
+            this.sumG = new int[sumLength];
+            this.sumB = new int[sumLength];
+        }
+    }
+
     public ColormaticResolver getWrappedResolver() {
         return wrappedResolver;
     }
 
     @Override
     public int getColor(Biome biome, double x, double z) {
+        int y = dependency.dependsOnY() ? this.posY.get().y : 0;
         // work-around for Sodium treating pure white as a "no-cache" sentinel
-        return 0xfffefefe & wrappedResolver.getColor(registryManager, biome, (int)x, this.posY.get().y, (int)z);
+        return 0xfffefefe & wrappedResolver.getColor(registryManager, biome, (int)x, y, (int)z);
+    }
+
+    /**
+     * Returns the client's dynamic registry manager, or null if there is no world.
+     */
+    @Nullable
+    public static DynamicRegistryManager getRegistryManager() {
+        return registryManager;
     }
 
     /**
@@ -79,24 +396,43 @@ public final class ExtendedColorResolver implements ColorResolver {
         registryManager = manager;
     }
 
-    private static <K> ColormaticResolver createResolver(ColormapStorage<K> storage, K key, ColormaticResolver fallback) {
-        final class StoredData {
-            @Nullable
-            Biome lastBiome;
-            @Nullable
-            BiomeColormap lastColormap;
+    /**
+     * Resolves colors from the colormaps in a storage for a single key, falling back to another resolver
+     * for biomes without a colormap.
+     */
+    private static final class StorageResolver<K> implements ColormaticResolver {
+
+        private final ColormapStorage<K> storage;
+        private final K key;
+        private final int keyIndex;
+        private final ColormaticResolver fallback;
+        private final ThreadLocal<StoredData> data = ThreadLocal.withInitial(StoredData::new);
+
+        StorageResolver(ColormapStorage<K> storage, K key, ColormaticResolver fallback) {
+            this.storage = storage;
+            this.key = key;
+            this.keyIndex = storage.getKeyIndex(key);
+            this.fallback = fallback;
         }
-        var data = ThreadLocal.withInitial(StoredData::new);
-        return (manager, biome, posX, posY, posZ) -> {
+
+        @Override
+        public int getColor(DynamicRegistryManager manager, Biome biome, int posX, int posY, int posZ) {
             var storedData = data.get();
             if(storedData.lastBiome != biome) {
-                storedData.lastColormap = storage.get(manager, key, biome);
+                storedData.lastColormap = storage.get(manager, keyIndex, key, biome);
                 storedData.lastBiome = biome;
             }
             var colormap = storedData.lastColormap;
             return colormap != null ? colormap.getColor(manager, biome, posX, posY, posZ)
                 : fallback.getColor(manager, biome, posX, posY, posZ);
-        };
+        }
+
+        private static final class StoredData {
+            @Nullable
+            Biome lastBiome;
+            @Nullable
+            BiomeColormap lastColormap;
+        }
     }
 
     private static final class CoordinateY {
@@ -0,0 +1,132 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.colormap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.kvverti.colormatic.Colormatic;
+
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.biome.Biome;
+
+/**
+ * Caches the normalized foliage noise used by grid colormaps. Noise is computed one 16x16 tile at a time,
+ * keyed by chunk position, and each thread keeps its own small set of tiles evicted in least recently used
+ * order. This avoids resampling simplex noise for every block in a column and for every block that blends
+ * the same column.
+ */
+public final class FoliageNoiseCache {
+
+    /**
+     * The number of tiles each thread keeps. Biome blending with the maximum radius touches at most
+     * 4 chunk columns around a single block, and a meshing thread works on a few neighboring sections.
+     */
+    private static final int TILE_COUNT = 16;
+
+    private static final ThreadLocal<FoliageNoiseCache> CACHE = ThreadLocal.withInitial(FoliageNoiseCache::new);
+
+    /**
+     * Hit and miss counts, only kept when debugging so the shared counters stay off the sampling path.
+     */
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private final long[] keys = new long[TILE_COUNT];
+    private final long[] lastUsed = new long[TILE_COUNT];
+    private final double[][] tiles = new double[TILE_COUNT][256];
+    private int size = 0;
+    private int lastTile = -1;
+    private long clock = 0;
+
+    private FoliageNoiseCache() {
+    }
+
+    /**
+     * Returns the foliage noise at the given block position, normalized to the range [0, 1].
+     */
+    public static double sample(int posX, int posZ) {
+        return CACHE.get().get(posX, posZ);
+    }
+
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    private double get(int posX, int posZ) {
+        long key = ChunkPos.toLong(posX >> 4, posZ >> 4);
+        int tile = lastTile;
+        if(tile < 0 || keys[tile] != key) {
+            tile = find(key);
+            if(tile < 0) {
+                if(Colormatic.DEBUG) {
+                    misses.increment();
+                }
+                tile = fill(key, posX & ~15, posZ & ~15);
+            } else if(Colormatic.DEBUG) {
+                hits.increment();
+            }
+            lastTile = tile;
+        } else if(Colormatic.DEBUG) {
+            hits.increment();
+        }
+        lastUsed[tile] = ++clock;
+        return tiles[tile][(posZ & 15) << 4 | (posX & 15)];
+    }
+
+    private int find(long key) {
+        for(int i = 0; i < size; i++) {
+            if(keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int fill(long key, int originX, int originZ) {
+        int tile;
+        if(size < TILE_COUNT) {
+            tile = size++;
+        } else {
+            tile = 0;
+            for(int i = 1; i < TILE_COUNT; i++) {
+                if(lastUsed[i] < lastUsed[tile]) {
+                    tile = i;
+                }
+            }
+        }
+        keys[tile] = key;
+        double[] noise = tiles[tile];
+        for(int z = 0; z < 16; z++) {
+            for(int x = 0; x < 16; x++) {
+                // mojang uses this still so I don't know why they marked it for removal
+                @SuppressWarnings("removal")
+                double frac = Biome.FOLIAGE_NOISE.sample((originX + x) * 0.0225, (originZ + z) * 0.0225, false);
+                noise[z << 4 | x] = (frac + 1.0) / 2; // normalize
+            }
+        }
+        return tile;
+    }
+}
@@ -22,22 +22,60 @@
 package io.github.kvverti.colormatic.colormap;
 
 import io.github.kvverti.colormatic.Colormatic;
+import io.github.kvverti.colormatic.resource.NativeImageTracker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import net.minecraft.client.texture.NativeImage;
 
 /**
- * A lightmap texture.
+ * A lightmap texture. The lightmap owns its image. The sky and block light rows are compiled to heap
+ * tables in the same order as the lightmap texture, with and without night vision, and the image is
+ * freed once they are built.
  */
 public class Lightmap {
 
     private static final Logger log = LogManager.getLogger();
 
-    private final NativeImage lightmap;
+    /**
+     * The number of sky and block light rows.
+     */
+    private static final int ROWS = 32;
+
+    /**
+     * Samples of the brightness curve 1 - (1 - x)^4 at every 1/256 step from 0 to 1.
+     */
+    private static final float[] BRIGHTNESS_CURVE = new float[257];
 
+    private final int width;
+    private final int[] normalPixels;
+    private final int[] nightVisionPixels;
+
+    /**
+     * Creates a lightmap from the given image, taking ownership of it. The image is freed by the time
+     * the constructor returns, even if it throws.
+     */
     public Lightmap(NativeImage lightmap) {
-        this.lightmap = lightmap;
+        this.width = lightmap.getWidth();
+        int height = lightmap.getHeight();
+        int[] pixels;
+        try {
+            pixels = ColormapImage.copyPixels(lightmap, false);
+        } finally {
+            NativeImageTracker.close(lightmap);
+        }
+        int size = width * ROWS;
+        this.normalPixels = new int[size];
+        System.arraycopy(pixels, 0, normalPixels, 0, size);
+        this.nightVisionPixels = new int[size];
+        if(height == 64) {
+            // night vision rows are part of the lightmap
+            System.arraycopy(pixels, size, nightVisionPixels, 0, size);
+        } else {
+            for(int i = 0; i < size; i++) {
+                nightVisionPixels[i] = computeNightVision(pixels[i]);
+            }
+        }
     }
 
     /**
@@ -45,14 +83,13 @@ public class Lightmap {
      */
     @Deprecated
     public boolean hasCustomColormap() {
-        return lightmap != null;
+        return true;
     }
 
     /**
      * Returns the color for the given block light level.
      */
     public int getBlockLight(int level, float flicker, float nightVision) {
-        int width = lightmap.getWidth();
         int posX = (int)(flicker * width) % width;
         if(posX < 0) {
             posX = -posX;
@@ -69,15 +106,15 @@ public class Lightmap {
     public int getSkyLight(int level, float ambience, float nightVision) {
         if(ambience < 0) {
             // lightning
-            int posX = lightmap.getWidth() - 1;
+            int posX = width - 1;
             return getPixel(posX, level, nightVision);
         } else {
-            float scaledAmbience = ambience * (lightmap.getWidth() - 2);
+            float scaledAmbience = ambience * (width - 2);
             float scaledAmbienceRemainder = scaledAmbience % 1.0f;
             int posX = (int)scaledAmbience;
             int light = getPixel(posX, level, nightVision);
             boolean blend = Colormatic.config().blendSkyLight;
-            if(blend && posX < lightmap.getWidth() - 2) {
+            if(blend && posX < width - 2) {
                 int rightLight = getPixel(posX + 1, level, nightVision);
                 light = mergeColors(rightLight, light, scaledAmbienceRemainder);
             }
@@ -85,57 +122,103 @@ public class Lightmap {
         }
     }
 
+    /**
+     * Returns a key for the lightmap columns and blend weights sampled with the given inputs.
+     * Inputs with the same key produce the same sky and block light colors, to within
+     * one color step.
+     */
+    public long getInputKey(float ambience, float flicker, float nightVision) {
+        int skyKey;
+        if(ambience < 0) {
+            skyKey = 0xfffff;
+        } else {
+            float scaledAmbience = ambience * (width - 2);
+            int posX = (int)scaledAmbience;
+            skyKey = posX << 8;
+            if(Colormatic.config().blendSkyLight && posX < width - 2) {
+                skyKey |= (int)(scaledAmbience % 1.0f * 256.0f);
+            }
+            skyKey &= 0xfffff;
+        }
+        int blockKey = (int)(flicker * width) % width;
+        if(blockKey < 0) {
+            blockKey = -blockKey;
+        }
+        blockKey &= 0xfff;
+        int nightVisionKey = Math.max(0, Math.min(256, (int)(nightVision * 256.0f)));
+        return skyKey | (long)blockKey << 20 | (long)nightVisionKey << 32;
+    }
+
+    /**
+     * Returns the brightness curve 1 - (1 - x)^4 for a color channel in [0, 1],
+     * interpolated from a table.
+     */
+    public static float brighten(float x) {
+        float scaled = Math.max(0.0f, Math.min(256.0f, x * 256.0f));
+        int i = (int)scaled;
+        if(i == 256) {
+            return BRIGHTNESS_CURVE[256];
+        }
+        float lo = BRIGHTNESS_CURVE[i];
+        return lo + (BRIGHTNESS_CURVE[i + 1] - lo) * (scaled - i);
+    }
+
     /**
      * Returns the pixel at (x, y) with or without night vision.
      */
     private int getPixel(int x, int y, float nightVision) {
+        int idx = y * width + x;
         if(nightVision > 0.0f) {
-            int nightVisionColor;
-            if(lightmap.getHeight() != 64) {
-                // night vision is calculated as
-                // newColor[r, g, b] = oldColor[r, g, b] / max(r, g, b)
-                // But if max(r, g, b) is 0, We will use just white. (divide 0 exception)
-                int color = lightmap.getColor(x, y);
-                int r = (color >> 16) & 0xff;
-                int g = (color >> 8) & 0xff;
-                int b = (color >> 0) & 0xff;
-                int scale = Math.max(Math.max(r, g), b);
-                int ret = 0xff000000;
-                if (scale != 0) {
-                    ret |= (255 * r / scale) << 16;
-                    ret |= (255 * g / scale) << 8;
-                    ret |= (255 * b / scale) << 0;
-                } else {
-                    ret |= 0x00ffffff; // white :)
-                }
-                nightVisionColor = ret;
-            } else {
-                nightVisionColor = lightmap.getColor(x, y + 32);
-            }
+            int nightVisionColor = nightVisionPixels[idx];
             if(nightVision >= 1.0f) {
                 return nightVisionColor;
             } else {
-                int normalColor = lightmap.getColor(x, y);
-                return mergeColors(normalColor, nightVisionColor, nightVision);
+                return mergeColors(normalPixels[idx], nightVisionColor, nightVision);
             }
         } else {
-            return lightmap.getColor(x, y);
+            return normalPixels[idx];
         }
     }
 
+    /**
+     * Computes the night vision color for lightmaps without night vision rows.
+     */
+    private static int computeNightVision(int color) {
+        // night vision is calculated as
+        // newColor[r, g, b] = oldColor[r, g, b] / max(r, g, b)
+        // But if max(r, g, b) is 0, We will use just white. (divide 0 exception)
+        int r = (color >> 16) & 0xff;
+        int g = (color >> 8) & 0xff;
+        int b = (color >> 0) & 0xff;
+        int scale = Math.max(Math.max(r, g), b);
+        int ret = 0xff000000;
+        if (scale != 0) {
+            ret |= (255 * r / scale) << 16;
+            ret |= (255 * g / scale) << 8;
+            ret |= (255 * b / scale) << 0;
+        } else {
+            ret |= 0x00ffffff; // white :)
+        }
+        return ret;
+    }
+
     private int mergeColors(int a, int b, float aweight) {
-        float oneMinusAweight = 1 - aweight;
-        int cha, chb;
+        // fixed point weights out of 256
+        int wa = (int)(aweight * 256.0f);
+        int wb = 256 - wa;
         int res = 0xff000000;
-        cha = ((a >> 16) & 0xff);
-        chb = ((b >> 16) & 0xff);
-        res |= (int)(cha * aweight + chb * oneMinusAweight) << 16;
-        cha = ((a >> 8) & 0xff);
-        chb = ((b >> 8) & 0xff);
-        res |= (int)(cha * aweight + chb * oneMinusAweight) << 8;
-        cha = a & 0xff;
-        chb = b & 0xff;
-        res |= (int)(cha * aweight + chb * oneMinusAweight);
+        res |= ((((a >> 16) & 0xff) * wa + ((b >> 16) & 0xff) * wb) >> 8) << 16;
+        res |= ((((a >> 8) & 0xff) * wa + ((b >> 8) & 0xff) * wb) >> 8) << 8;
+        res |= ((a & 0xff) * wa + (b & 0xff) * wb) >> 8;
         return res;
     }
+
+    static {
+        for(int i = 0; i <= 256; i++) {
+            float x = 1.0f - i / 256.0f;
+            x *= x;
+            x *= x;
+            BRIGHTNESS_CURVE[i] = 1.0f - x;
+        }
+    }
 }
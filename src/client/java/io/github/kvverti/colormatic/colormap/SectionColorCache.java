@@ -0,0 +1,203 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.colormap;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.world.BiomeColorCache;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+/**
+ * A biome color cache for {@link ExtendedColorResolver}s. Vanilla's cache stores one color per X/Z column
+ * of a chunk section, which is wrong for colormaps that depend on the Y coordinate. This cache stores a
+ * color for every block of a chunk section instead, and keeps a bounded number of sections, evicted in
+ * least recently used order. Colors are computed one block at a time at first, and once a section has
+ * resolved about as many samples that way as resolving the whole section at once takes, the rest of the
+ * section is filled in bulk. Sections that are only sampled sparsely never pay for a bulk fill, and densely
+ * sampled sections cost at most twice as much as filling them up front. Resolvers that do not depend on
+ * the Y coordinate only store the bottom layer of each section, like vanilla's cache.
+ */
+public final class SectionColorCache extends BiomeColorCache {
+
+    /**
+     * The maximum number of sections kept per resolver. Each section takes 16 KiB, or 1 KiB without Y dependence.
+     */
+    private static final int MAX_SECTIONS = 64;
+
+    private final ToIntFunction<BlockPos> colorFactory;
+    private final SectionFactory sectionFactory;
+    private final boolean dependsOnY;
+    private final Long2ObjectLinkedOpenHashMap<Section> sections = new Long2ObjectLinkedOpenHashMap<>(MAX_SECTIONS, 0.5f);
+    private final ThreadLocal<Last> last = ThreadLocal.withInitial(Last::new);
+
+    public SectionColorCache(ToIntFunction<BlockPos> colorFactory, SectionFactory sectionFactory, boolean dependsOnY) {
+        super(colorFactory);
+        this.colorFactory = colorFactory;
+        this.sectionFactory = sectionFactory;
+        this.dependsOnY = dependsOnY;
+    }
+
+    @Override
+    public int getBiomeColor(BlockPos pos) {
+        long key = ChunkSectionPos.asLong(
+            ChunkSectionPos.getSectionCoord(pos.getX()),
+            ChunkSectionPos.getSectionCoord(pos.getY()),
+            ChunkSectionPos.getSectionCoord(pos.getZ()));
+        var last = this.last.get();
+        var section = last.section;
+        if(section == null || last.key != key || section.invalid) {
+            section = getSection(key);
+            last.key = key;
+            last.section = section;
+        }
+        int index = (pos.getZ() & 15) << 4 | (pos.getX() & 15);
+        if(dependsOnY) {
+            index |= (pos.getY() & 15) << 8;
+        }
+        int color = section.colors[index];
+        if(color == -1) {
+            // resolvers never return pure white, so it can be used as a sentinel
+            if(section.countMiss()) {
+                this.sectionFactory.computeSection(
+                    ChunkSectionPos.getSectionCoord(pos.getX()),
+                    ChunkSectionPos.getSectionCoord(pos.getY()),
+                    ChunkSectionPos.getSectionCoord(pos.getZ()),
+                    section.colors);
+                color = section.colors[index];
+            } else {
+                color = this.colorFactory.applyAsInt(pos);
+                section.colors[index] = color;
+            }
+        }
+        return color;
+    }
+
+    private Section getSection(long key) {
+        Section section;
+        synchronized(sections) {
+            section = sections.getAndMoveToFirst(key);
+            if(section != null) {
+                return section;
+            }
+            section = new Section(dependsOnY ? 16 * 16 * 16 : 16 * 16, getFillThreshold());
+            sections.putAndMoveToFirst(key, section);
+            if(sections.size() > MAX_SECTIONS) {
+                sections.removeLast().invalid = true;
+            }
+        }
+        return section;
+    }
+
+    /**
+     * Returns the number of blocks to resolve one at a time before filling the rest of a section in bulk.
+     * This is the number of biome samples a bulk fill takes divided by the number a single block takes.
+     */
+    private int getFillThreshold() {
+        int radius = MinecraftClient.getInstance().options.getBiomeBlendRadius().getValue();
+        int layers = dependsOnY ? 16 : 1;
+        int sectionWidth = 16 + 2 * radius;
+        int blockWidth = 2 * radius + 1;
+        return Math.max(1, layers * sectionWidth * sectionWidth / (blockWidth * blockWidth));
+    }
+
+    /**
+     * Removes all sections of the given chunk and its neighbors, as they may blend the given chunk's colors.
+     */
+    @Override
+    public void reset(int chunkX, int chunkZ) {
+        synchronized(sections) {
+            var it = sections.long2ObjectEntrySet().fastIterator();
+            while(it.hasNext()) {
+                var entry = it.next();
+                long key = entry.getLongKey();
+                if(Math.abs(ChunkSectionPos.unpackX(key) - chunkX) <= 1 && Math.abs(ChunkSectionPos.unpackZ(key) - chunkZ) <= 1) {
+                    entry.getValue().invalid = true;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized(sections) {
+            for(var section : sections.values()) {
+                section.invalid = true;
+            }
+            sections.clear();
+        }
+    }
+
+    /**
+     * Computes the colors of every block in a chunk section, indexed by `y << 8 | z << 4 | x`. The array
+     * holds only the bottom layer if the colors do not depend on Y.
+     * Other threads may read the array while it is computed, so only final colors may be stored in it.
+     */
+    @FunctionalInterface
+    public interface SectionFactory {
+        void computeSection(int sectionX, int sectionY, int sectionZ, int[] out);
+    }
+
+    private static final class Section {
+        final int[] colors;
+        volatile boolean invalid = false;
+        private final int fillThreshold;
+        // racy, as a miss lost to contention only delays the bulk fill
+        private int misses = 0;
+        private volatile boolean filled = false;
+
+        Section(int size, int fillThreshold) {
+            colors = new int[size];
+            Arrays.fill(colors, -1);
+            this.fillThreshold = fillThreshold;
+        }
+
+        /**
+         * Records a color that is not computed yet, and returns true for the single caller that should
+         * fill in the rest of the section.
+         */
+        boolean countMiss() {
+            if(filled || ++misses < fillThreshold) {
+                return false;
+            }
+            synchronized(this) {
+                if(filled) {
+                    return false;
+                }
+                filled = true;
+                return true;
+            }
+        }
+    }
+
+    private static final class Last {
+        long key;
+        @Nullable
+        Section section;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.iface;
+
+import io.github.kvverti.colormatic.DimensionData;
+
+/**
+ * Caches the Colormatic data for a ClientWorld's dimension on the world itself, so that
+ * per-frame and per-sample code does not need to look up the dimension in the registries.
+ */
+public interface DimensionDataAccess {
+    /**
+     * Get the dimension data for this world, recomputing it if resources have been
+     * reloaded since it was cached.
+     */
+    DimensionData colormatic$getDimensionData();
+}
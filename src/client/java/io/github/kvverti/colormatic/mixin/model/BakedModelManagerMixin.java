@@ -21,37 +21,39 @@
  */
 package io.github.kvverti.colormatic.mixin.model;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
 import io.github.kvverti.colormatic.Colormatic;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
-import org.spongepowered.asm.mixin.injection.Inject;
-import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.render.model.BakedModelManager;
-import net.minecraft.client.render.model.ModelLoader;
+import net.minecraft.client.render.model.json.JsonUnbakedModel;
 import net.minecraft.resource.ResourceManager;
-import net.minecraft.resource.ResourceReloader;
-import net.minecraft.util.profiler.Profiler;
+import net.minecraft.util.Identifier;
 
 /**
  * Reload the custom block colors before block models reload, because block models depend on the custom
- * color status of block states.
+ * color status of block states. Custom colors load on the prepare executor alongside the model files
+ * and are registered on the render thread, and the models are not built until both have finished.
  */
 @Mixin(BakedModelManager.class)
 abstract class BakedModelManagerMixin {
 
-    @Inject(
+    @WrapOperation(
         method = "reload(Lnet/minecraft/resource/ResourceReloader$Synchronizer;Lnet/minecraft/resource/ResourceManager;Lnet/minecraft/util/profiler/Profiler;Lnet/minecraft/util/profiler/Profiler;Ljava/util/concurrent/Executor;Ljava/util/concurrent/Executor;)Ljava/util/concurrent/CompletableFuture;",
         at = @At(
             value = "INVOKE",
-            target = "Lnet/minecraft/util/profiler/Profiler;startTick()V",
-            shift = At.Shift.AFTER
+            target = "Lnet/minecraft/client/render/model/BakedModelManager;reloadModels(Lnet/minecraft/resource/ResourceManager;Ljava/util/concurrent/Executor;)Ljava/util/concurrent/CompletableFuture;"
         )
     )
-    private void reloadColormaticCustomBiomeColors(ResourceReloader.Synchronizer synchronizer, ResourceManager manager, Profiler prepareProfiler, Profiler applyProfiler, Executor prepareExecutor, Executor applyExecutor, CallbackInfoReturnable<CompletableFuture<Void>> cir) {
-        Colormatic.CUSTOM_BLOCK_COLORS.reload(manager);
+    private CompletableFuture<Map<Identifier, JsonUnbakedModel>> reloadColormaticCustomBiomeColors(ResourceManager manager, Executor prepareExecutor, Operation<CompletableFuture<Map<Identifier, JsonUnbakedModel>>> original) {
+        var customColors = Colormatic.CUSTOM_BLOCK_COLORS.reload(manager, prepareExecutor, MinecraftClient.getInstance());
+        return original.call(manager, prepareExecutor).thenCombine(customColors, (models, unused) -> models);
     }
 }
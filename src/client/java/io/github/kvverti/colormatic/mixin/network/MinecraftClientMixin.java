@@ -21,6 +21,7 @@
  */
 package io.github.kvverti.colormatic.mixin.network;
 
+import io.github.kvverti.colormatic.Colormatic;
 import io.github.kvverti.colormatic.colormap.ExtendedColorResolver;
 import io.github.kvverti.colormatic.properties.DefaultColumns;
 import org.jetbrains.annotations.Nullable;
@@ -43,5 +44,9 @@ public abstract class MinecraftClientMixin {
         var manager = world == null ? null : world.getRegistryManager();
         ExtendedColorResolver.setRegistryManager(manager);
         DefaultColumns.reloadDefaultColumnBounds(manager);
+        // lookups check that the biome at a raw ID in a compiled table is the biome being looked up,
+        // so readers that see the new raw IDs with the old tables fall back to a slower lookup
+        Colormatic.compileBiomeColormaps(manager);
+        Colormatic.assignBiomeRawIds(manager);
     }
 }
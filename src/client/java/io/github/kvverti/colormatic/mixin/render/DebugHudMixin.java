@@ -0,0 +1,62 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.mixin.render;
+
+import java.util.List;
+
+import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import io.github.kvverti.colormatic.Colormatic;
+import io.github.kvverti.colormatic.Lightmaps;
+import io.github.kvverti.colormatic.colormap.ExtendedColorResolver;
+import io.github.kvverti.colormatic.colormap.FoliageNoiseCache;
+import io.github.kvverti.colormatic.resource.NativeImageTracker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+
+import net.minecraft.client.gui.hud.DebugHud;
+
+/**
+ * Reports Colormatic statistics on the debug screen when debugging is enabled.
+ */
+@Mixin(DebugHud.class)
+public abstract class DebugHudMixin {
+
+    @ModifyReturnValue(method = "getLeftText", at = @At("RETURN"))
+    private List<String> addColormaticStatistics(List<String> lines) {
+        if(Colormatic.DEBUG) {
+            lines.add("");
+            lines.add(String.format("Colormatic noise cache: %d hits, %d misses",
+                FoliageNoiseCache.getHitCount(),
+                FoliageNoiseCache.getMissCount()));
+            lines.add(String.format("Colormatic sections: %d resolved, %d single biome",
+                ExtendedColorResolver.getSectionCount(),
+                ExtendedColorResolver.getUniformSectionCount()));
+            lines.add(String.format("Colormatic native images: %d live, %d bytes",
+                NativeImageTracker.getLiveCount(),
+                NativeImageTracker.getLiveBytes()));
+            lines.add(String.format("Colormatic lightmap: %d updates, %d skipped",
+                Lightmaps.getUpdateCount(),
+                Lightmaps.getSkippedUpdateCount()));
+        }
+        return lines;
+    }
+}
@@ -43,6 +43,7 @@ import net.minecraft.client.world.ClientWorld;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.effect.StatusEffects;
 import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.util.Util;
 import net.minecraft.util.math.MathHelper;
 
 /**
@@ -101,6 +102,12 @@ public abstract class LightmapTextureManagerMixin {
     @Unique
     private double relativeIntensityExpScale;
 
+    /**
+     * The block light relative intensity scale for each sky light level.
+     */
+    @Unique
+    private final float[] relativeIntensityScales = new float[16];
+
     /**
      * Stored light index as 0bSSSSBBBB, in sync with the loops over sky and block light levels.
      */
@@ -113,6 +120,38 @@ public abstract class LightmapTextureManagerMixin {
     @Unique
     private final int[] BLOCK_LIGHT_COLORS = new int[16];
 
+    // lightmap memoization fields
+
+    /**
+     * The custom lightmap in the texture, or null if the vanilla lightmap was last composed.
+     */
+    @Unique
+    private Lightmap lastLightmap;
+
+    /**
+     * The quantized inputs the texture was last composed from.
+     */
+    @Unique
+    private long lastInputKey;
+
+    /**
+     * The gamma the texture was last composed with.
+     */
+    @Unique
+    private float lastBrightness;
+
+    /**
+     * The quantized lightning, night vision, and darkness inputs the texture was last composed from.
+     */
+    @Unique
+    private int lastSuddenInputKey;
+
+    /**
+     * When the texture was last composed, in milliseconds.
+     */
+    @Unique
+    private long lastUpdateTime;
+
     @Inject(method = "tick", at = @At("RETURN"))
     private void onTickTickFlicker(CallbackInfo info) {
         if(Colormatic.config().flickerBlockLight) {
@@ -169,12 +208,22 @@ public abstract class LightmapTextureManagerMixin {
         float ambience = (world.getSkyBrightness(partialTicks) - 0.2f) * 1.25f;
         // relative intensity curve = exp2(ax)
         relativeIntensityExpScale = ambience * ColormaticConfig.scaled(Colormatic.config().relativeBlockLightIntensityExponent) / 16.0;
+        // powers of a single exp for each sky light level
+        float intensityStep = (float)Math.exp(relativeIntensityExpScale);
+        float intensityScale = 1.0f;
+        for(int i = 0; i < 16; i++) {
+            relativeIntensityScales[i] = intensityScale;
+            intensityScale *= intensityStep;
+        }
         // set this to -1.0 to signal a lightning strike. Relative intensity still follows the normal ambience.
         if(world.getLightningTicksLeft() > 0) {
             ambience = -1.0f;
         }
         Lightmap map = Lightmaps.get(world);
-        if(map != null) {
+        if(map == null) {
+            // vanilla composes the texture
+            lastLightmap = null;
+        } else {
             float nightVision;
             PlayerEntity player = this.client.player;
             if(player.isSubmergedInWater() && player.hasStatusEffect(StatusEffects.CONDUIT_POWER)) {
@@ -188,12 +237,45 @@ public abstract class LightmapTextureManagerMixin {
             float darknessScale = this.client.options.getDarknessEffectScale().getValue().floatValue();
             float darknessFactor = darknessScale * this.getDarknessFactor(partialTicks);
             darknessFactor = darknessScale * this.getDarkness(player, darknessFactor, partialTicks);
+            // skip composing and uploading when the inputs match the texture to within one color step
+            int darknessKey = MathHelper.clamp((int)(darknessFactor * 256.0f), 0, 256);
+            long inputKey = map.getInputKey(ambience, flickerPos, nightVision)
+                | (long)darknessKey << 41
+                | (long)(MathHelper.clamp((int)(relativeIntensityExpScale * 4096.0), -2048, 2047) & 0xfff) << 50;
+            // lightning, night vision, and darkness change suddenly, so they are never throttled
+            int suddenInputKey = (ambience < 0 ? 1 : 0)
+                | MathHelper.clamp((int)(nightVision * 256.0f), 0, 256) << 1
+                | darknessKey << 10;
+            boolean unchanged = map == lastLightmap && inputKey == lastInputKey && brightness == lastBrightness;
+            if(!unchanged && map == lastLightmap && suddenInputKey == lastSuddenInputKey && brightness == lastBrightness) {
+                // only gradual inputs changed, so wait out the update interval
+                int updateRate = Colormatic.config().lightmapUpdateRate;
+                unchanged = updateRate < ColormaticConfig.MAX_LIGHTMAP_UPDATE_RATE
+                    && Util.getMeasuringTimeMs() - lastUpdateTime < 1000 / Math.max(1, updateRate);
+            }
+            Lightmaps.countUpdate(unchanged);
+            if(unchanged) {
+                this.client.getProfiler().pop();
+                info.cancel();
+                return;
+            }
+            lastLightmap = map;
+            lastInputKey = inputKey;
+            lastBrightness = brightness;
+            lastSuddenInputKey = suddenInputKey;
+            lastUpdateTime = Util.getMeasuringTimeMs();
             for(int i = 0; i < 16; i++) {
                 SKY_LIGHT_COLORS[i] = map.getSkyLight(i, ambience, nightVision);
                 BLOCK_LIGHT_COLORS[i] = map.getBlockLight(i, flickerPos, nightVision);
             }
+            // bounds of the changed pixels, for a partial upload
+            int minBlockLight = 16;
+            int maxBlockLight = -1;
+            int minSkyLight = 16;
+            int maxSkyLight = -1;
+            int changedCount = 0;
             for(int skyLight = 0; skyLight < 16; skyLight++) {
-                float blockIntensityScale = (float)Math.exp(relativeIntensityExpScale * skyLight);
+                float blockIntensityScale = relativeIntensityScales[skyLight];
                 for(int blockLight = 0; blockLight < 16; blockLight++) {
                     int skyColor = SKY_LIGHT_COLORS[skyLight];
                     int blockColor = BLOCK_LIGHT_COLORS[blockLight];
@@ -205,18 +287,9 @@ public abstract class LightmapTextureManagerMixin {
                     r = Math.max(0.0f, r - darknessFactor);
                     g = Math.max(0.0f, g - darknessFactor);
                     b = Math.max(0.0f, b - darknessFactor);
-                    float rbright = 1.0f - r;
-                    float gbright = 1.0f - g;
-                    float bbright = 1.0f - b;
-                    rbright *= rbright;
-                    gbright *= gbright;
-                    bbright *= bbright;
-                    rbright *= rbright;
-                    gbright *= gbright;
-                    bbright *= bbright;
-                    rbright = 1.0f - rbright;
-                    gbright = 1.0f - gbright;
-                    bbright = 1.0f - bbright;
+                    float rbright = Lightmap.brighten(r);
+                    float gbright = Lightmap.brighten(g);
+                    float bbright = Lightmap.brighten(b);
                     r = r * (1.0f - brightness) + rbright * brightness;
                     g = g * (1.0f - brightness) + gbright * brightness;
                     b = b * (1.0f - brightness) + bbright * brightness;
@@ -224,11 +297,33 @@ public abstract class LightmapTextureManagerMixin {
                     color |= (int)(r * 255.0f) << 16;
                     color |= (int)(g * 255.0f) << 8;
                     color |= (int)(b * 255.0f);
-                    this.image.setColor(blockLight, skyLight, color);
+                    if(this.image.getColor(blockLight, skyLight) != color) {
+                        this.image.setColor(blockLight, skyLight, color);
+                        minBlockLight = Math.min(minBlockLight, blockLight);
+                        maxBlockLight = Math.max(maxBlockLight, blockLight);
+                        minSkyLight = Math.min(minSkyLight, skyLight);
+                        maxSkyLight = Math.max(maxSkyLight, skyLight);
+                        changedCount++;
+                    }
                 }
             }
+            if(changedCount > 128) {
+                this.texture.upload();
+            } else if(changedCount > 0) {
+                // upload only the rectangle around the changed pixels
+                this.texture.bindTexture();
+                this.image.upload(
+                    0,
+                    minBlockLight,
+                    minSkyLight,
+                    minBlockLight,
+                    minSkyLight,
+                    maxBlockLight - minBlockLight + 1,
+                    maxSkyLight - minSkyLight + 1,
+                    false,
+                    false);
+            }
             // do the cleanup because we cancel the default
-            this.texture.upload();
             this.client.getProfiler().pop();
             info.cancel();
         }
@@ -266,7 +361,7 @@ public abstract class LightmapTextureManagerMixin {
         int block = lightIndex & 0b1111;
         lightIndex = (lightIndex + 1) & 0xff;
         if(block != 15) {
-            return blockLight * (float)Math.exp(relativeIntensityExpScale * sky);
+            return blockLight * relativeIntensityScales[sky];
         }
         return blockLight;
     }
@@ -23,29 +23,33 @@ package io.github.kvverti.colormatic.mixin.world;
 
 import com.llamalad7.mixinextras.injector.ModifyReturnValue;
 import io.github.kvverti.colormatic.Colormatic;
-import io.github.kvverti.colormatic.colormap.BiomeColormaps;
+import io.github.kvverti.colormatic.DimensionData;
+import io.github.kvverti.colormatic.iface.BiomeRawIdAccess;
 import io.github.kvverti.colormatic.iface.DefaultSkyColorAccess;
 import io.github.kvverti.colormatic.iface.StaticRenderContext;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 
 import net.minecraft.world.biome.Biome;
 import net.minecraft.world.biome.BiomeEffects;
 
 @Mixin(Biome.class)
-public class BiomeMixin implements DefaultSkyColorAccess {
+public class BiomeMixin implements DefaultSkyColorAccess, BiomeRawIdAccess {
 
     @Shadow @Final private BiomeEffects effects;
 
+    @Unique
+    private int rawId = -1;
+
     @ModifyReturnValue(method = "getSkyColor", at = @At("RETURN"))
     private int proxySkyColor(int original) {
         var ctx = StaticRenderContext.SKY_CONTEXT.get();
         if(ctx.world != null) {
             var world = ctx.world;
-            var dimId = Colormatic.getDimId(world);
-            var resolver = BiomeColormaps.getTotalSky(dimId);
+            var resolver = DimensionData.get(world).getSkyResolver();
             var manager = world.getRegistryManager();
             return resolver.getColor(manager, (Biome)(Object)this, ctx.posX, ctx.posY, ctx.posZ);
         }
@@ -61,8 +65,7 @@ public class BiomeMixin implements DefaultSkyColorAccess {
             if(fogInvisible) {
                 return original;
             }
-            var dimId = Colormatic.getDimId(world);
-            var resolver = BiomeColormaps.getTotalSkyFog(dimId);
+            var resolver = DimensionData.get(world).getSkyFogResolver();
             return resolver.getColor(world.getRegistryManager(), (Biome)(Object)this, ctx.posX, ctx.posY, ctx.posZ);
         }
         return original;
@@ -77,4 +80,14 @@ public class BiomeMixin implements DefaultSkyColorAccess {
     public int colormatic$getDefaultFogColor() {
         return this.effects.getFogColor();
     }
+
+    @Override
+    public int colormatic$getRawId() {
+        return this.rawId;
+    }
+
+    @Override
+    public void colormatic$setRawId(int rawId) {
+        this.rawId = rawId;
+    }
 }
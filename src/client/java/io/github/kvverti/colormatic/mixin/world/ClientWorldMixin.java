@@ -24,12 +24,16 @@ package io.github.kvverti.colormatic.mixin.world;
 import com.llamalad7.mixinextras.injector.ModifyReceiver;
 import com.llamalad7.mixinextras.injector.wrapmethod.WrapMethod;
 import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import io.github.kvverti.colormatic.DimensionData;
 import io.github.kvverti.colormatic.colormap.ExtendedColorResolver;
+import io.github.kvverti.colormatic.colormap.SectionColorCache;
+import io.github.kvverti.colormatic.iface.DimensionDataAccess;
 import io.github.kvverti.colormatic.iface.StaticRenderContext;
 import it.unimi.dsi.fastutil.objects.Object2ObjectArrayMap;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
@@ -50,7 +54,7 @@ import net.minecraft.world.biome.source.BiomeCoords;
  * Provides global sky color customization capability.
  */
 @Mixin(ClientWorld.class)
-public abstract class ClientWorldMixin extends World {
+public abstract class ClientWorldMixin extends World implements DimensionDataAccess {
 
     @Shadow
     @Final
@@ -59,6 +63,12 @@ public abstract class ClientWorldMixin extends World {
     @Shadow
     public abstract int calculateColor(BlockPos pos, ColorResolver colorResolver);
 
+    /**
+     * The cached dimension data, or null if it has not been computed.
+     */
+    @Unique
+    private volatile DimensionData dimensionData;
+
     private ClientWorldMixin() {
         super(null, null, null, null, null, false, false, 0L, 0);
     }
@@ -105,7 +115,8 @@ public abstract class ClientWorldMixin extends World {
     /**
      * Vanilla doesn't check if the color cache exists before retrieving it. We fix this here.
      * This method can race with {@link #reloadColormaticColor(CallbackInfo)} so it modifies the receiver
-     * directly before the method invocation.
+     * directly before the method invocation. Colormatic's resolvers get a section cache, which takes the Y
+     * coordinate into account if the resolver's dependency classification says their colors depend on it.
      */
     @ModifyReceiver(
         method = "getColor",
@@ -116,7 +127,13 @@ public abstract class ClientWorldMixin extends World {
     )
     private BiomeColorCache fixVanillaColorCache(BiomeColorCache cache, BlockPos pos, BlockPos samePos, ColorResolver resolver) {
         if(cache == null) {
-            cache = new BiomeColorCache(pos1 -> this.calculateColor(pos1, resolver));
+            if(resolver instanceof ExtendedColorResolver extendedResolver) {
+                cache = new SectionColorCache(pos1 -> this.calculateColor(pos1, resolver),
+                    (x, y, z, out) -> extendedResolver.resolveSectionColors(this, x, y, z, out),
+                    extendedResolver.getDependency().dependsOnY());
+            } else {
+                cache = new BiomeColorCache(pos1 -> this.calculateColor(pos1, resolver));
+            }
             // prevent races with removing in reloadColormaticColor
             synchronized(this) {
                 this.colorCache.put(resolver, cache);
@@ -136,4 +153,14 @@ public abstract class ClientWorldMixin extends World {
             this.colorCache.entrySet().removeIf(entry -> entry.getKey() instanceof ExtendedColorResolver);
         }
     }
+
+    @Override
+    public DimensionData colormatic$getDimensionData() {
+        var data = this.dimensionData;
+        if(data == null || !data.isCurrent()) {
+            data = DimensionData.create(this);
+            this.dimensionData = data;
+        }
+        return data;
+    }
 }
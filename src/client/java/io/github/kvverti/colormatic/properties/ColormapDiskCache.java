@@ -0,0 +1,348 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.properties;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hashing;
+import io.github.kvverti.colormatic.colormap.ColormapImage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.ModContainer;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.resource.ResourcePack;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
+
+/**
+ * Stores the custom colormap files of a resource pack stack in the game directory, so that an unchanged
+ * stack does not need its colormap files read, hashed, or decoded again on the next launch. Each entry
+ * holds the properties and decoded images of one stack, and is named by a fingerprint of the stack
+ * that is computed without reading any colormap file. Entries are read into the heap in one go, so no
+ * file stays open or mapped while the cache is in use. Entries that have not been used for a while are
+ * removed.
+ */
+public final class ColormapDiskCache {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private static final int MAGIC = 0x434d5343; // "CMSC"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".bin";
+    private static final Duration MAX_UNUSED_AGE = Duration.ofDays(30);
+
+    private static final Path DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("cache").resolve("colormatic");
+    private static final Path PACK_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("resourcepacks");
+
+    private ColormapDiskCache() {
+    }
+
+    private static Path getPath(String fingerprint) {
+        return DIRECTORY.resolve(fingerprint + EXTENSION);
+    }
+
+    /**
+     * Returns a fingerprint of the given resource manager's packs, or null if a pack's contents cannot be
+     * checked without reading them. Packs from the resource pack folder are identified by the size and
+     * modification time of their files. Built in and mod packs are identified by the game and mod versions.
+     * Server and world packs can change without either, so stacks containing them are not cached.
+     */
+    @Nullable
+    public static String getFingerprint(ResourceManager manager) {
+        var fingerprint = new StringBuilder();
+        fingerprint.append(VERSION).append('\n');
+        List<String> mods = new ArrayList<>();
+        for(ModContainer mod : FabricLoader.getInstance().getAllMods()) {
+            mods.add(mod.getMetadata().getId() + "@" + mod.getMetadata().getVersion().getFriendlyString());
+        }
+        Collections.sort(mods);
+        for(String mod : mods) {
+            fingerprint.append(mod).append('\n');
+        }
+        try(Stream<ResourcePack> packs = manager.streamResourcePacks()) {
+            for(ResourcePack pack : (Iterable<ResourcePack>)packs::iterator) {
+                String name = pack.getName();
+                fingerprint.append("pack ").append(name).append('\n');
+                if(name.startsWith("file/")) {
+                    if(!appendFileStats(fingerprint, PACK_DIRECTORY.resolve(name.substring("file/".length())))) {
+                        return null;
+                    }
+                } else if(name.equals("server") || name.equals("world")) {
+                    return null;
+                }
+            }
+        }
+        return Hashing.sha256().hashString(fingerprint, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Appends the size and modification time of a pack file, or of every file in a pack directory.
+     * Returns false if they could not be read.
+     */
+    private static boolean appendFileStats(StringBuilder fingerprint, Path pack) {
+        try {
+            var attributes = Files.readAttributes(pack, BasicFileAttributes.class);
+            if(!attributes.isDirectory()) {
+                appendFileStats(fingerprint, "", attributes);
+                return true;
+            }
+            List<String> files = new ArrayList<>();
+            Files.walkFileTree(pack, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    var line = new StringBuilder();
+                    appendFileStats(line, pack.relativize(file).toString(), attrs);
+                    files.add(line.toString());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            // walk order depends on the file system
+            Collections.sort(files);
+            for(String file : files) {
+                fingerprint.append(file);
+            }
+            return true;
+        } catch(IOException e) {
+            log.warn("Could not check resource pack {} for the colormap cache: {}", pack, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void appendFileStats(StringBuilder fingerprint, String name, BasicFileAttributes attributes) {
+        fingerprint.append(name)
+            .append(' ').append(attributes.size())
+            .append(' ').append(attributes.lastModifiedTime().toMillis())
+            .append('\n');
+    }
+
+    /**
+     * Reads the cached colormaps for the pack stack with the given fingerprint, or returns null if there
+     * are none. Unreadable entries are deleted.
+     */
+    @Nullable
+    public static Entry read(String fingerprint) {
+        var path = getPath(fingerprint);
+        try {
+            var entry = readFrom(ByteBuffer.wrap(Files.readAllBytes(path)), fingerprint);
+            // mark this entry as used so it is not pruned
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return entry;
+        } catch(NoSuchFileException e) {
+            return null;
+        } catch(IOException | IllegalArgumentException | InvalidIdentifierException | BufferUnderflowException e) {
+            log.warn("Discarding unreadable colormap cache entry {}: {}", path, e.getMessage());
+            delete(path);
+            return null;
+        }
+    }
+
+    private static Entry readFrom(ByteBuffer buf, String fingerprint) {
+        if(buf.getInt() != MAGIC || buf.getInt() != VERSION || !readString(buf).equals(fingerprint)) {
+            throw new IllegalArgumentException("Unknown colormap cache format");
+        }
+        int propertyCount = readCount(buf);
+        Map<Identifier, String> properties = new HashMap<>(propertyCount);
+        for(int i = 0; i < propertyCount; i++) {
+            properties.put(new Identifier(readString(buf)), readString(buf));
+        }
+        int imageCount = readCount(buf);
+        var images = new ColormapImage[imageCount];
+        for(int i = 0; i < imageCount; i++) {
+            images[i] = ColormapImage.readFrom(buf);
+        }
+        int sourceCount = readCount(buf);
+        Map<Identifier, ColormapImage> imagesBySource = new HashMap<>(sourceCount);
+        for(int i = 0; i < sourceCount; i++) {
+            var source = new Identifier(readString(buf));
+            int index = buf.getInt();
+            if(index < 0 || index >= imageCount) {
+                throw new IllegalArgumentException("Image index out of bounds");
+            }
+            imagesBySource.put(source, images[index]);
+        }
+        return new Entry(properties, imagesBySource);
+    }
+
+    private static int readCount(ByteBuffer buf) {
+        int count = buf.getInt();
+        // every element takes at least four bytes, so corrupt counts cannot request huge maps
+        if(count < 0 || count > buf.remaining() / 4) {
+            throw new IllegalArgumentException("Invalid element count");
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if(length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Truncated string");
+        }
+        var s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    /**
+     * Stores the colormaps of the pack stack with the given fingerprint, unless they are already stored.
+     * Writers are serialized, so concurrent reloads of the same stack write the entry only once.
+     */
+    public static synchronized void write(String fingerprint, Map<Identifier, String> properties, Map<Identifier, ColormapImage> imagesBySource) {
+        var path = getPath(fingerprint);
+        if(Files.exists(path)) {
+            return;
+        }
+        try {
+            Files.createDirectories(DIRECTORY);
+            List<byte[]> strings = new ArrayList<>();
+            int size = 4 + 4 + addString(strings, fingerprint);
+            size += 4;
+            // maps are iterated the same way when sizing and when writing
+            for(var entry : properties.entrySet()) {
+                size += addString(strings, entry.getKey().toString());
+                size += addString(strings, entry.getValue());
+            }
+            // images shared by several sources are stored once
+            Map<ColormapImage, Integer> imageIndices = new IdentityHashMap<>();
+            List<ColormapImage> images = new ArrayList<>();
+            size += 4;
+            for(ColormapImage image : imagesBySource.values()) {
+                if(imageIndices.putIfAbsent(image, images.size()) == null) {
+                    images.add(image);
+                    size += image.getSerializedSize();
+                }
+            }
+            size += 4;
+            for(var entry : imagesBySource.entrySet()) {
+                size += addString(strings, entry.getKey().toString()) + 4;
+            }
+            var buf = ByteBuffer.allocate(size);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            var stringIt = strings.iterator();
+            putString(buf, stringIt.next());
+            buf.putInt(properties.size());
+            for(int i = 0; i < properties.size(); i++) {
+                putString(buf, stringIt.next());
+                putString(buf, stringIt.next());
+            }
+            buf.putInt(images.size());
+            for(ColormapImage image : images) {
+                image.writeTo(buf);
+            }
+            buf.putInt(imagesBySource.size());
+            for(var entry : imagesBySource.entrySet()) {
+                putString(buf, stringIt.next());
+                buf.putInt(imageIndices.get(entry.getValue()));
+            }
+            // write to a temporary file first so that readers never see a partial entry
+            var tmp = Files.createTempFile(DIRECTORY, fingerprint, ".tmp");
+            try {
+                Files.write(tmp, buf.array());
+                try {
+                    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch(AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch(IOException e) {
+            log.warn("Could not write colormap cache entry {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes a string for {@link #putString} and returns the number of bytes it takes.
+     */
+    private static int addString(List<byte[]> strings, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        strings.add(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+    }
+
+    /**
+     * Removes entries that have not been used recently.
+     */
+    public static void prune() {
+        if(!Files.isDirectory(DIRECTORY)) {
+            return;
+        }
+        var cutoff = FileTime.from(Instant.now().minus(MAX_UNUSED_AGE));
+        try(Stream<Path> files = Files.list(DIRECTORY)) {
+            files.filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                .filter(path -> {
+                    try {
+                        return Files.getLastModifiedTime(path).compareTo(cutoff) < 0;
+                    } catch(IOException e) {
+                        return false;
+                    }
+                })
+                .forEach(ColormapDiskCache::delete);
+        } catch(IOException e) {
+            log.warn("Could not prune colormap cache: {}", e.getMessage());
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch(IOException e) {
+            log.warn("Could not delete colormap cache entry {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * The cached colormap files of one pack stack: the JSON form of each colormap's properties, and the
+     * decoded image at each source location. Sources with identical images share one image.
+     */
+    public record Entry(Map<Identifier, String> properties, Map<Identifier, ColormapImage> images) {
+    }
+}
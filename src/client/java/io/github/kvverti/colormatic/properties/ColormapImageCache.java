@@ -0,0 +1,199 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import io.github.kvverti.colormatic.colormap.ColormapImage;
+import io.github.kvverti.colormatic.resource.ResourceIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+
+/**
+ * Shares decoded colormap images between colormaps during a single reload. Images are looked up by
+ * source location first, then by a hash of their contents, so that identical images in different
+ * locations are also only decoded once. Colormap images are read only, so sharing them is safe.
+ * The properties and images of the reload are also kept in the {@link ColormapDiskCache}, and read
+ * back from it without touching the colormap files when the resource pack stack has not changed.
+ */
+public final class ColormapImageCache {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private final Map<Identifier, ColormapImage> imagesBySource = new ConcurrentHashMap<>();
+    private final Map<HashCode, ColormapImage> imagesByContent = new ConcurrentHashMap<>();
+    private final Map<Identifier, String> propertiesById = new ConcurrentHashMap<>();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadedBytes = new LongAdder();
+    private final LongAdder diskHitCount = new LongAdder();
+    private final LongAdder decodeCount = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    @Nullable
+    private String fingerprint;
+    @Nullable
+    private ColormapDiskCache.Entry diskEntry;
+
+    /**
+     * Set when this reload loaded something the disk cache entry does not have.
+     */
+    private volatile boolean changed = false;
+
+    /**
+     * Looks up the disk cache entry for the given resource manager's packs. Must be called before
+     * any colormap is loaded.
+     */
+    public void readDiskCache(ResourceManager manager) {
+        fingerprint = ColormapDiskCache.getFingerprint(manager);
+        diskEntry = fingerprint != null ? ColormapDiskCache.read(fingerprint) : null;
+    }
+
+    /**
+     * Stores the properties and images loaded in this reload in the disk cache, if its entry for the
+     * resource pack stack is missing any of them. Must be called after every colormap is loaded.
+     */
+    public void writeDiskCache() {
+        if(fingerprint != null && changed) {
+            ColormapDiskCache.write(fingerprint, propertiesById, imagesBySource);
+        }
+    }
+
+    /**
+     * Returns the JSON form of the properties at the given location from the disk cache, or null if
+     * they are not cached.
+     */
+    @Nullable
+    String getProperties(Identifier id) {
+        var json = diskEntry != null ? diskEntry.properties().get(id) : null;
+        if(json != null) {
+            propertiesById.put(id, json);
+        }
+        return json;
+    }
+
+    /**
+     * Records the JSON form of the properties at the given location, read from their file.
+     */
+    void putProperties(Identifier id, String json) {
+        propertiesById.put(id, json);
+        changed = true;
+    }
+
+    /**
+     * Returns the colormap image at the given location, decoding it only if no identical image
+     * has been loaded yet.
+     */
+    public ColormapImage load(ResourceManager manager, Identifier source) throws IOException {
+        long start = System.nanoTime();
+        var image = imagesBySource.get(source);
+        if(image == null) {
+            image = diskEntry != null ? diskEntry.images().get(source) : null;
+            if(image != null) {
+                diskHitCount.increment();
+            } else {
+                image = loadFromResource(manager, source);
+                changed = true;
+            }
+            var existing = imagesBySource.putIfAbsent(source, image);
+            if(existing != null) {
+                image = existing;
+            }
+        }
+        loadCount.increment();
+        loadedBytes.add(image.getByteSize());
+        loadNanos.add(System.nanoTime() - start);
+        return image;
+    }
+
+    private ColormapImage loadFromResource(ResourceManager manager, Identifier source) throws IOException {
+        byte[] data;
+        var resource = ResourceIndex.get(manager).getResource(source)
+            .orElseThrow(() -> new InvalidColormapException("Missing colormap image " + source));
+        try(InputStream in = resource.getInputStream()) {
+            data = in.readAllBytes();
+        }
+        var hash = Hashing.sha256().hashBytes(data);
+        var image = imagesByContent.get(hash);
+        if(image == null) {
+            decodeCount.increment();
+            var decoded = PropertyUtil.readColormapImage(new ByteArrayInputStream(data));
+            // another thread may have decoded the same image in the meantime
+            image = imagesByContent.putIfAbsent(hash, decoded);
+            if(image == null) {
+                image = decoded;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Logs how many images were shared, how much memory sharing them saved, and how long the reload
+     * took with or without the disk cache.
+     */
+    public void logStatistics(Object reloader) {
+        long loads = loadCount.sum();
+        if(loads == 0) {
+            return;
+        }
+        Set<ColormapImage> uniqueImages = Collections.newSetFromMap(new IdentityHashMap<>());
+        uniqueImages.addAll(imagesBySource.values());
+        int unique = uniqueImages.size();
+        long uniqueBytes = uniqueImages.stream().mapToLong(ColormapImage::getByteSize).sum();
+        log.info("{}: loaded {} colormap image(s) from {} unique image(s) ({} sources), deduplication ratio {}, {} bytes saved",
+            reloader,
+            loads,
+            unique,
+            imagesBySource.size(),
+            String.format("%.2f", (double)loads / unique),
+            loadedBytes.sum() - uniqueBytes);
+        String diskCache;
+        if(fingerprint == null) {
+            diskCache = "unavailable for these resource packs";
+        } else if(diskEntry == null) {
+            diskCache = "missed";
+        } else {
+            diskCache = changed ? "partly hit" : "hit";
+        }
+        log.info("{}: {} colormap image(s) read from the disk cache, {} decoded, in {} ms of loading time; reload took {} ms, disk cache {}",
+            reloader,
+            diskHitCount.sum(),
+            decodeCount.sum(),
+            loadNanos.sum() / 1_000_000,
+            (System.nanoTime() - startNanos) / 1_000_000,
+            diskCache);
+    }
+}
@@ -23,8 +23,6 @@ package io.github.kvverti.colormatic.properties;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -35,10 +33,16 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import io.github.kvverti.colormatic.Colormatic;
+import io.github.kvverti.colormatic.resource.ResourceIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
@@ -326,16 +330,40 @@ public class ColormapProperties {
      * from the identifier name.
      */
     public static ColormapProperties load(ResourceManager manager, Identifier id, boolean custom) {
-        try(InputStream in = manager.getResourceOrThrow(id).getInputStream()) {
-            try(Reader r = PropertyUtil.getJsonReader(in, id, k -> k, "blocks"::equals)) {
-                return loadFromJson(r, id, custom);
+        return load(manager, id, custom, null);
+    }
+
+    /**
+     * Loads the colormap properties defined by the given identifier. If a cache is given, properties
+     * are read from the cache when it has them, and added to it otherwise.
+     */
+    public static ColormapProperties load(ResourceManager manager, Identifier id, boolean custom, @Nullable ColormapImageCache cache) {
+        if(cache != null) {
+            var cached = cache.getProperties(id);
+            if(cached != null) {
+                return loadFromJson(JsonParser.parseString(cached), id, custom);
+            }
+        }
+        var resource = ResourceIndex.get(manager).getResource(id);
+        if(resource.isEmpty()) {
+            return loadFromJson(new JsonObject(), id, custom);
+        }
+        JsonElement json;
+        try(InputStream in = resource.get().getInputStream()) {
+            json = PropertyUtil.getJsonTree(in, id, k -> k, "blocks"::equals);
+            if(cache != null) {
+                cache.putProperties(id, json.toString());
             }
         } catch(IOException e) {
-            return loadFromJson(new StringReader("{}"), id, custom);
+            json = new JsonObject();
+        } catch(JsonParseException e) {
+            log.error("Error loading {}: {}", id, e.getMessage());
+            json = new JsonObject();
         }
+        return loadFromJson(json, id, custom);
     }
 
-    private static ColormapProperties loadFromJson(Reader json, Identifier id, boolean custom) {
+    private static ColormapProperties loadFromJson(JsonElement json, Identifier id, boolean custom) {
         Settings settings;
         try {
             settings = PropertyUtil.PROPERTY_GSON.fromJson(json, Settings.class);
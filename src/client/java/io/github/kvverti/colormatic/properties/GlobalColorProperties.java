@@ -23,12 +23,13 @@ package io.github.kvverti.colormatic.properties;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
+import io.github.kvverti.colormatic.resource.ResourceIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
@@ -343,19 +344,26 @@ public class GlobalColorProperties {
     }
 
     public static GlobalColorProperties load(ResourceManager manager, Identifier id, boolean fall) {
-        try(InputStream in = manager.getResourceOrThrow(id).getInputStream()) {
-            try(Reader r = PropertyUtil.getJsonReader(in, id, k -> keyRemap.getOrDefault(k, k), k -> false)) {
-                return loadFromJson(r, id);
-            }
+        var resource = ResourceIndex.get(manager).getResource(id);
+        if(resource.isEmpty()) {
+            return fall ? GlobalColorProperties.DEFAULT : null;
+        }
+        JsonElement json;
+        try(InputStream in = resource.get().getInputStream()) {
+            json = PropertyUtil.getJsonTree(in, id, k -> keyRemap.getOrDefault(k, k), k -> false);
         } catch(IOException e) {
             return fall ? GlobalColorProperties.DEFAULT : null;
+        } catch(JsonParseException e) {
+            log.error("Error parsing {}: {}", id, e.getMessage());
+            return new GlobalColorProperties(new Settings());
         }
+        return loadFromJson(json, id);
     }
 
-    private static GlobalColorProperties loadFromJson(Reader rd, Identifier id) {
+    private static GlobalColorProperties loadFromJson(JsonElement json, Identifier id) {
         Settings settings;
         try {
-            settings = PropertyUtil.PROPERTY_GSON.fromJson(rd, Settings.class);
+            settings = PropertyUtil.PROPERTY_GSON.fromJson(json, Settings.class);
             if(settings == null) {
                 settings = new Settings();
             }
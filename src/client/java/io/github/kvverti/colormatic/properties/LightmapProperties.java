@@ -26,6 +26,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 
 import com.google.gson.JsonParseException;
+import io.github.kvverti.colormatic.resource.ResourceIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -49,8 +50,12 @@ public record LightmapProperties() {
      * If not present, returns a default properties.
      */
     public static LightmapProperties load(ResourceManager manager, Identifier id) {
+        var resource = ResourceIndex.get(manager).getResource(id);
+        if(resource.isEmpty()) {
+            return new LightmapProperties(new Settings());
+        }
         Settings settings;
-        try(Reader in = new InputStreamReader(manager.getResourceOrThrow(id).getInputStream())) {
+        try(Reader in = new InputStreamReader(resource.get().getInputStream())) {
             settings = PropertyUtil.PROPERTY_GSON.fromJson(in, Settings.class);
         } catch(JsonParseException e) {
             log.error("Error parsing {}: {}", id, e.getMessage());
@@ -21,10 +21,10 @@
  */
 package io.github.kvverti.colormatic.properties;
 
-import net.minecraft.client.texture.NativeImage;
+import io.github.kvverti.colormatic.colormap.ColormapImage;
 
 /**
  * Biome properties with their associated colormap image.
  */
-public record PropertyImage(ColormapProperties properties, NativeImage image) {
+public record PropertyImage(ColormapProperties properties, ColormapImage image) {
 }
@@ -24,17 +24,19 @@ package io.github.kvverti.colormatic.properties;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StringReader;
-import java.nio.ByteOrder;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import io.github.kvverti.colormatic.colormap.ColormapImage;
 import io.github.kvverti.colormatic.properties.adapter.ApplicableBlockStatesAdapter;
 import io.github.kvverti.colormatic.properties.adapter.ChatFormatAdapter;
 import io.github.kvverti.colormatic.properties.adapter.GridEntryAdapter;
@@ -42,6 +44,9 @@ import io.github.kvverti.colormatic.properties.adapter.HexColorAdapter;
 import io.github.kvverti.colormatic.properties.adapter.IdentifierAdapter;
 import io.github.kvverti.colormatic.properties.adapter.MaterialColorAdapter;
 import io.github.kvverti.colormatic.properties.adapter.StringIdentifiableTypeAdapterFactory;
+import io.github.kvverti.colormatic.resource.NativeImageTracker;
+import io.github.kvverti.colormatic.resource.ResourceIndex;
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.MapColor;
 import net.minecraft.client.texture.NativeImage;
@@ -84,63 +89,72 @@ public class PropertyUtil {
     }
 
     /**
-     * Creates a reader suitable for deserializing json from either a json file
-     * or a properties file. Since Optifine properties files may use old names
-     * for property keys, the keyMapper parameter transforms these into sensible
-     * names. As well, for properties that must be arrays in json, there is the
-     * predicate arrayValue.
+     * Reads a JSON tree from either a json file or a properties file. Since
+     * Optifine properties files may use old names for property keys, the
+     * keyMapper parameter transforms these into sensible names. As well, for
+     * properties that must be arrays in json, there is the predicate arrayValue.
+     *
+     * @throws JsonParseException if a json file is malformed
      */
-    public static Reader getJsonReader(
+    public static JsonElement getJsonTree(
         InputStream in,
         Identifier id,
         Function<String, String> keyMapper,
         Predicate<String> arrayValue) throws IOException {
-        Reader jsonInput;
         if(id.getPath().endsWith(".properties")) {
             // properties file
             Properties data = new Properties();
             data.load(in);
-            jsonInput = new StringReader(PropertyUtil.toJson(data, keyMapper, arrayValue));
+            return PropertyUtil.toJson(data, keyMapper, arrayValue);
         } else {
             // json file
-            jsonInput = new InputStreamReader(in);
+            return JsonParser.parseReader(new InputStreamReader(in));
         }
-        return jsonInput;
     }
 
     /**
-     * Converts the argument to an equivalent JSON string. Property keys with
-     * dot separators are rendered as nested objects in the JSON string.
+     * Converts the argument to an equivalent JSON tree. Property keys with
+     * dot separators are rendered as nested objects in the JSON tree.
      * Property keys are also mapped according to the keyMapper.
      */
-    private static String toJson(Properties properties, Function<String, String> keyMapper, Predicate<String> arrayValue) {
-        // split lists of data on whitespace
-        Map<String, Object> props = new HashMap<>();
+    private static JsonObject toJson(Properties properties, Function<String, String> keyMapper, Predicate<String> arrayValue) {
+        JsonObject props = new JsonObject();
         for(String prop : properties.stringPropertyNames()) {
             String[] keys = prop.split("\\.");
-            Map<String, Object> nest = props;
+            JsonObject nest = props;
             int i;
             for(i = 0; i < keys.length - 1; i++) {
                 String key = keyMapper.apply(keys[i]);
-                Object tmp = nest.computeIfAbsent(key, k -> new HashMap<>());
-                // similar to mergeCompound() below, but the existing key is
-                // the non-map object rather than the map object.
-                if(tmp instanceof Map<?, ?>) {
-                    // noinspection unchecked
-                    nest = (Map<String, Object>)tmp;
+                JsonElement tmp = nest.get(key);
+                if(tmp != null && tmp.isJsonObject()) {
+                    nest = tmp.getAsJsonObject();
                 } else {
-                    Map<String, Object> newNest = new HashMap<>();
-                    newNest.put("", tmp);
-                    nest.put(key, newNest);
+                    JsonObject newNest = new JsonObject();
+                    // similar to mergeCompound() below, but the existing key is
+                    // the non-object value rather than the object.
+                    if(tmp != null) {
+                        newNest.add("", tmp);
+                    }
+                    nest.add(key, newNest);
                     nest = newNest;
                 }
             }
             String key = keyMapper.apply(keys[i]);
             String propVal = properties.getProperty(prop);
-            Object val = arrayValue.test(key) ? propVal.split("\\s+") : propVal;
-            nest.merge(key, val, PropertyUtil::mergeCompound);
+            JsonElement val;
+            if(arrayValue.test(key)) {
+                // split lists of data on whitespace
+                JsonArray array = new JsonArray();
+                for(String elem : propVal.split("\\s+")) {
+                    array.add(elem);
+                }
+                val = array;
+            } else {
+                val = new JsonPrimitive(propVal);
+            }
+            mergeCompound(nest, key, val);
         }
-        return PROPERTY_GSON.toJson(props);
+        return props;
     }
 
     /**
@@ -153,15 +167,13 @@ public class PropertyUtil {
      * "nest": value2
      * }
      */
-    private static Object mergeCompound(Object existingValue, Object newValue) {
-        if(existingValue instanceof Map<?, ?>) {
+    private static void mergeCompound(JsonObject nest, String key, JsonElement newValue) {
+        JsonElement existingValue = nest.get(key);
+        if(existingValue != null && existingValue.isJsonObject()) {
             // existing value is a compound, so we add the new value to it
-            @SuppressWarnings("unchecked")
-            Map<String, Object> map = (Map<String, Object>)existingValue;
-            map.put("", newValue);
-            return existingValue;
+            existingValue.getAsJsonObject().add("", newValue);
         } else {
-            return newValue;
+            nest.add(key, newValue);
         }
     }
 
@@ -173,36 +185,56 @@ public class PropertyUtil {
      *                                  or if the colormap exists, but is malformed.
      */
     public static PropertyImage loadColormap(ResourceManager manager, Identifier id, boolean custom) {
-        ColormapProperties props = ColormapProperties.load(manager, id, custom);
+        return loadColormap(manager, id, custom, null);
+    }
+
+    /**
+     * Loads the given colormap properties and the image (if any) associated with
+     * them. If a cache is given, images are shared with other colormaps loaded
+     * through the same cache, and properties and images may come from the disk cache.
+     *
+     * @throws InvalidColormapException if no colormap properties exist for the given id
+     *                                  or if the colormap exists, but is malformed.
+     */
+    public static PropertyImage loadColormap(ResourceManager manager, Identifier id, boolean custom, @Nullable ColormapImageCache cache) {
+        ColormapProperties props = ColormapProperties.load(manager, id, custom, cache);
         if(props.getFormat() == ColormapProperties.Format.FIXED) {
             // fixed format does not have a corresponding image
             return new PropertyImage(props, null);
         }
-        try(InputStream in = manager.getResourceOrThrow(props.getSource()).getInputStream()) {
-            NativeImage image = NativeImage.read(in);
-            if(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
-                // swap the red and blue channels of every pixel, because the biome
-                // colormap expects ARGB, but NativeImage is ABGR
-                for(int x = 0; x < image.getWidth(); x++) {
-                    for(int y = 0; y < image.getHeight(); y++) {
-                        int pix = image.getColor(x, y);
-                        int tmp = (pix & 0xff0000) >> 16;
-                        tmp |= (pix & 0x0000ff) << 16;
-                        pix &= ~(0xff0000 | 0x0000ff);
-                        pix |= tmp;
-                        image.setColor(x, y, pix);
-                    }
-                }
-            }
-            // cross-reference image dimensions with colormap format
-            if(props.getFormat() == ColormapProperties.Format.VANILLA) {
-                if(image.getWidth() != 256 || image.getHeight() != 256) {
-                    throw new InvalidColormapException("Vanilla colormap dimensions must be 256x256");
+        ColormapImage image;
+        try {
+            if(cache != null) {
+                image = cache.load(manager, props.getSource());
+            } else {
+                var resource = ResourceIndex.get(manager).getResource(props.getSource())
+                    .orElseThrow(() -> new InvalidColormapException("Missing colormap image " + props.getSource()));
+                try(InputStream in = resource.getInputStream()) {
+                    image = readColormapImage(in);
                 }
             }
-            return new PropertyImage(props, image);
         } catch(IOException e) {
             throw new InvalidColormapException(e);
         }
+        // cross-reference image dimensions with colormap format
+        if(props.getFormat() == ColormapProperties.Format.VANILLA) {
+            if(image.getWidth() != 256 || image.getHeight() != 256) {
+                throw new InvalidColormapException("Vanilla colormap dimensions must be 256x256");
+            }
+        }
+        return new PropertyImage(props, image);
+    }
+
+    /**
+     * Decodes a colormap image from the given PNG data.
+     */
+    static ColormapImage readColormapImage(InputStream in) throws IOException {
+        NativeImage nativeImage = NativeImageTracker.track(NativeImage.read(in));
+        try {
+            // the biome colormap is kept on the heap as ARGB, so the native image can be freed right away
+            return ColormapImage.copyOf(nativeImage);
+        } finally {
+            NativeImageTracker.close(nativeImage);
+        }
     }
 }
@@ -24,8 +24,14 @@ package io.github.kvverti.colormatic.properties.adapter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
@@ -39,7 +45,6 @@ import org.apache.logging.log4j.Logger;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
-import net.minecraft.predicate.block.BlockStatePredicate;
 import net.minecraft.registry.Registries;
 import net.minecraft.state.property.Property;
 import net.minecraft.util.Identifier;
@@ -50,6 +55,25 @@ public class ApplicableBlockStatesAdapter extends TypeAdapter<ApplicableBlockSta
 
     private static final Logger logger = LogManager.getLogger();
 
+    /**
+     * Parsed block state descriptors, shared between all colormaps loaded in a reload.
+     * Cached values must not be modified.
+     */
+    private static final Map<String, ApplicableBlockStates> descriptorCache = new ConcurrentHashMap<>();
+
+    /**
+     * The properties of each block by name.
+     */
+    private static final Map<Block, Map<String, Property<?>>> propertyIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Clears the cached block state descriptors. Called at the start of each reload.
+     */
+    public static void clearCache() {
+        descriptorCache.clear();
+        propertyIndex.clear();
+    }
+
     @Override
     public void write(JsonWriter out, ApplicableBlockStates value) throws IOException {
         throw new UnsupportedOperationException("write");
@@ -61,7 +85,26 @@ public class ApplicableBlockStatesAdapter extends TypeAdapter<ApplicableBlockSta
             throw new JsonSyntaxException("required nonnull");
         }
         String s = in.nextString();
-        return from(s);
+        var res = descriptorCache.get(s);
+        if(res == null) {
+            // malformed descriptors throw and are not cached
+            res = from(s);
+            if(res.specialKey == null) {
+                // special descriptors are cheap to parse and may warn, which each file should report
+                descriptorCache.putIfAbsent(s, res);
+            }
+        }
+        return res;
+    }
+
+    private static Map<String, Property<?>> getPropertiesByName(Block block) {
+        return propertyIndex.computeIfAbsent(block, b -> {
+            Map<String, Property<?>> res = new HashMap<>();
+            for(Property<?> p : b.getStateManager().getProperties()) {
+                res.put(p.getName(), p);
+            }
+            return res;
+        });
     }
 
     /**
@@ -95,43 +138,39 @@ public class ApplicableBlockStatesAdapter extends TypeAdapter<ApplicableBlockSta
             throw new JsonSyntaxException("Invalid block identifier: " + blockDesc, e);
         }
         res.block = b;
-        BlockStatePredicate pred = BlockStatePredicate.forBlock(b);
+        // each property constraint clears the states it excludes
+        List<BlockState> allStates = b.getStateManager().getStates();
+        BitSet matching = new BitSet(allStates.size());
+        matching.set(0, allStates.size());
+        var propertiesByName = getPropertiesByName(b);
         for(int i = bgnIdx; i < parts.length; i++) {
             int split = parts[i].indexOf('=');
             if(split < 0) {
                 throw new JsonSyntaxException("Invalid property syntax: " + parts[i]);
             }
             String propStr = parts[i].substring(0, split);
-            Property<?> prop = null;
-            for(Property<?> p : b.getDefaultState().getProperties()) {
-                if(p.getName().equals(propStr)) {
-                    prop = p;
-                    break;
-                }
-            }
+            Property<?> prop = propertiesByName.get(propStr);
             if(prop == null) {
                 throw new JsonSyntaxException("Invalid property: " + propStr);
             }
             String[] propValues = parts[i].substring(split + 1).split(",");
-            List<Comparable<?>> ls = new ArrayList<>();
+            Set<Comparable<?>> values = new HashSet<>();
             for(String s : propValues) {
-                putPropValue(prop, s, ls);
+                putPropValue(prop, s, values);
+            }
+            for(int s = matching.nextSetBit(0); s >= 0; s = matching.nextSetBit(s + 1)) {
+                if(!values.contains(allStates.get(s).get(prop))) {
+                    matching.clear(s);
+                }
             }
-            pred = pred.with(prop, ls::contains);
         }
         // if this applies to all states, the states list is empty
         res.states = new ArrayList<>();
-        boolean excluded = false;
-        for(BlockState state : b.getStateManager().getStates()) {
-            if(pred.test(state)) {
-                res.states.add(state);
-            } else {
-                excluded = true;
+        if(matching.cardinality() < allStates.size()) {
+            for(int s = matching.nextSetBit(0); s >= 0; s = matching.nextSetBit(s + 1)) {
+                res.states.add(allStates.get(s));
             }
         }
-        if(!excluded) {
-            res.states.clear();
-        }
         return res;
     }
 
@@ -158,7 +197,7 @@ public class ApplicableBlockStatesAdapter extends TypeAdapter<ApplicableBlockSta
         }
     }
 
-    private static <T extends Comparable<T>> void putPropValue(Property<T> prop, String s, List<? super T> values) {
+    private static <T extends Comparable<T>> void putPropValue(Property<T> prop, String s, Set<? super T> values) {
         Optional<T> value = prop.parse(s);
         if(value.isPresent()) {
             values.add(value.get());
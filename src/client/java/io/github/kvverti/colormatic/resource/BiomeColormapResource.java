@@ -21,12 +21,21 @@
  */
 package io.github.kvverti.colormatic.resource;
 
+import java.util.List;
+
+import io.github.kvverti.colormatic.Colormatic;
 import io.github.kvverti.colormatic.colormap.BiomeColormap;
+import io.github.kvverti.colormatic.colormap.ExtendedColorResolver;
 import io.github.kvverti.colormatic.properties.InvalidColormapException;
 import io.github.kvverti.colormatic.properties.PropertyImage;
 import io.github.kvverti.colormatic.properties.PropertyUtil;
 
 import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.registry.DynamicRegistryManager;
 import net.minecraft.resource.ResourceManager;
 import net.minecraft.util.Identifier;
 
@@ -37,6 +46,8 @@ import net.minecraft.util.Identifier;
  */
 public class BiomeColormapResource implements SimpleSynchronousResourceReloadListener {
 
+    private static final Logger log = LogManager.getLogger(Colormatic.MODID);
+
     private final Identifier id;
     private final Identifier optifineId;
     private BiomeColormap colormap;
@@ -74,18 +85,36 @@ public class BiomeColormapResource implements SimpleSynchronousResourceReloadLis
 
     @Override
     public void reload(ResourceManager manager) {
-        PropertyImage pi;
-        try {
-            pi = PropertyUtil.loadColormap(manager, id, false);
-        } catch(InvalidColormapException e) {
-            // try Optifine directory
-            try {
-                pi = PropertyUtil.loadColormap(manager, optifineId, false);
-            } catch(InvalidColormapException e2) {
-                // no custom colormap
-                pi = null;
+        var index = ResourceIndex.get(manager);
+        PropertyImage pi = null;
+        // try the Optifine directory second
+        for(Identifier candidate : List.of(id, optifineId)) {
+            // colormaps are defined by a properties file, or by an image alone with default properties
+            if(index.getResource(candidate).isPresent() || index.getResource(getDefaultSource(candidate)).isPresent()) {
+                try {
+                    pi = PropertyUtil.loadColormap(manager, candidate, false);
+                    break;
+                } catch(InvalidColormapException e) {
+                    log.error("Error loading {}: {}", candidate, e.getMessage());
+                }
             }
         }
-        colormap = pi == null ? null : new BiomeColormap(pi.properties(), pi.image());
+        colormap = pi == null ? null : BiomeColormap.create(pi.properties(), pi.image());
+        compile(ExtendedColorResolver.getRegistryManager());
+    }
+
+    private static Identifier getDefaultSource(Identifier id) {
+        String path = id.getPath();
+        return new Identifier(id.getNamespace(), path.substring(0, path.lastIndexOf('.')) + ".png");
+    }
+
+    /**
+     * Precomputes per-biome data for the custom colormap, if any.
+     */
+    public void compile(@Nullable DynamicRegistryManager manager) {
+        var colormap = this.colormap;
+        if(colormap != null) {
+            colormap.compile(manager);
+        }
     }
 }
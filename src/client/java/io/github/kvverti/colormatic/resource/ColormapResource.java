@@ -22,6 +22,7 @@
 package io.github.kvverti.colormatic.resource;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
@@ -64,17 +65,19 @@ public class ColormapResource implements SimpleResourceReloadListener<int[]> {
     @Override
     public CompletableFuture<int[]> load(ResourceManager manager, Profiler profiler, Executor executor) {
         return CompletableFuture.supplyAsync(() -> {
-            try {
-                return RawTextureDataLoader.loadRawTextureData(manager, id);
-            } catch(IOException e) {
-                // try OptiFine directory
-                try {
-                    return RawTextureDataLoader.loadRawTextureData(manager, optifineId);
-                } catch(IOException e2) {
-                    // fallback to vanilla
-                    return null;
+            var index = ResourceIndex.get(manager);
+            // try the OptiFine directory second
+            for(Identifier candidate : List.of(id, optifineId)) {
+                if(index.getResource(candidate).isPresent()) {
+                    try {
+                        return RawTextureDataLoader.loadRawTextureData(manager, candidate);
+                    } catch(IOException e) {
+                        // try the next location
+                    }
                 }
             }
+            // fallback to vanilla
+            return null;
         }, executor);
     }
 
@@ -21,17 +21,26 @@
  */
 package io.github.kvverti.colormatic.resource;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import io.github.kvverti.colormatic.Colormatic;
 import io.github.kvverti.colormatic.colormap.BiomeColormap;
 import io.github.kvverti.colormatic.colormap.BiomeColormaps;
+import io.github.kvverti.colormatic.properties.ColormapDiskCache;
+import io.github.kvverti.colormatic.properties.ColormapImageCache;
 import io.github.kvverti.colormatic.properties.InvalidColormapException;
 import io.github.kvverti.colormatic.properties.PropertyImage;
 import io.github.kvverti.colormatic.properties.PropertyUtil;
+import io.github.kvverti.colormatic.properties.adapter.ApplicableBlockStatesAdapter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
 import net.minecraft.resource.ResourceManager;
@@ -64,16 +73,51 @@ public class CustomBiomeColormapsResource implements SimpleSynchronousResourceRe
 
     @Override
     public void reload(ResourceManager manager) {
-        BiomeColormaps.reset();
-        addColormaps(manager, otherOptifineId, false);
-        addColormaps(manager, optifineId, false);
-        addColormaps(manager, id, true);
+        reload(manager, Runnable::run, Runnable::run).join();
     }
 
-    private static void addColormaps(ResourceManager manager, Identifier dir, boolean json) {
+    /**
+     * Reloads custom colormaps in stages. The colormap files are discovered first, then each colormap is
+     * parsed and decoded in parallel on the prepare executor. The colormaps are registered on the apply
+     * executor once all of them have loaded, in discovery order, so that later directories still override
+     * earlier ones. The disk cache entry for the resource packs is read before loading, and written once
+     * on the prepare executor after loading if it was missing anything.
+     */
+    public CompletableFuture<Void> reload(ResourceManager manager, Executor prepareExecutor, Executor applyExecutor) {
+        var imageCache = new ColormapImageCache();
+        return CompletableFuture.supplyAsync(() -> {
+                ApplicableBlockStatesAdapter.clearCache();
+                List<Identifier> files = new ArrayList<>();
+                files.addAll(findColormaps(manager, otherOptifineId, false));
+                files.addAll(findColormaps(manager, optifineId, false));
+                files.addAll(findColormaps(manager, id, true));
+                // read the entry before pruning, which keeps recently read entries
+                imageCache.readDiskCache(manager);
+                ColormapDiskCache.prune();
+                return files;
+            }, prepareExecutor)
+            .thenCompose(files -> {
+                List<CompletableFuture<BiomeColormap>> colormaps = new ArrayList<>(files.size());
+                for(Identifier file : files) {
+                    colormaps.add(CompletableFuture.supplyAsync(() -> loadColormap(manager, file, imageCache), prepareExecutor));
+                }
+                return CompletableFuture.allOf(colormaps.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(v -> colormaps.stream().map(CompletableFuture::join).collect(toList()));
+            })
+            .thenApplyAsync(colormaps -> {
+                imageCache.writeDiskCache();
+                return colormaps;
+            }, prepareExecutor)
+            .thenAcceptAsync(colormaps -> {
+                BiomeColormaps.replace(colormaps.stream().filter(Objects::nonNull).collect(toList()));
+                imageCache.logStatistics(id);
+                NativeImageTracker.report(id);
+            }, applyExecutor);
+    }
+
+    private static Collection<Identifier> findColormaps(ResourceManager manager, Identifier dir, boolean json) {
         String ext = json ? ".json" : ".properties";
-        Collection<Identifier> files = manager.findResources(dir.getPath(),
-            id -> id.getNamespace().equals(dir.getNamespace()) && (id.getPath().endsWith(ext) || id.getPath().endsWith(".png")))
+        return ResourceIndex.get(manager).findResources(dir, id -> id.getPath().endsWith(ext) || id.getPath().endsWith(".png"))
             .keySet()
             .stream()
             .map(id -> {
@@ -88,17 +132,22 @@ public class CustomBiomeColormapsResource implements SimpleSynchronousResourceRe
             })
             .distinct()
             .collect(toList());
-        for(Identifier id : files) {
-            if(!ID_PATTERN.matcher(id.getPath()).matches()) {
-                log.error("Colormap definition file '{}' does not name a valid resource location. Please contact resource pack author to fix.", id);
-            }
-            try {
-                PropertyImage pi = PropertyUtil.loadColormap(manager, id, true);
-                BiomeColormap colormap = new BiomeColormap(pi.properties(), pi.image());
-                BiomeColormaps.add(colormap);
-            } catch(InvalidColormapException e) {
-                log.error("Error parsing {}: {}", id, e.getMessage());
-            }
+    }
+
+    /**
+     * Loads the colormap defined by the given file, or returns null if it is invalid.
+     */
+    @Nullable
+    private static BiomeColormap loadColormap(ResourceManager manager, Identifier id, ColormapImageCache imageCache) {
+        if(!ID_PATTERN.matcher(id.getPath()).matches()) {
+            log.error("Colormap definition file '{}' does not name a valid resource location. Please contact resource pack author to fix.", id);
+        }
+        try {
+            PropertyImage pi = PropertyUtil.loadColormap(manager, id, true, imageCache);
+            return BiomeColormap.create(pi.properties(), pi.image());
+        } catch(InvalidColormapException e) {
+            log.error("Error parsing {}: {}", id, e.getMessage());
+            return null;
         }
     }
 }
@@ -61,16 +61,34 @@ public class LightmapsResource implements SimpleResourceReloadListener<Map<Ident
     public CompletableFuture<Map<Identifier, NativeImage>> load(ResourceManager manager, Profiler profiler, Executor executor) {
         return CompletableFuture.supplyAsync(() -> {
             Map<Identifier, NativeImage> lightmaps = getLightmaps(manager, optifineId);
-            lightmaps.putAll(getLightmaps(manager, id));
+            try {
+                for(Map.Entry<Identifier, NativeImage> entry : getLightmaps(manager, id).entrySet()) {
+                    // Colormatic lightmaps override Optifine lightmaps
+                    NativeImageTracker.close(lightmaps.put(entry.getKey(), entry.getValue()));
+                }
+            } catch(Throwable t) {
+                closeAll(lightmaps);
+                throw t;
+            }
             return lightmaps;
         }, executor);
     }
 
     // Key = dimension ID, Value = lightmap image
     private static Map<Identifier, NativeImage> getLightmaps(ResourceManager manager, Identifier dir) {
-        Map<Identifier, Resource> files = manager
-            .findResources(dir.getPath(), s -> s.getPath().endsWith(".png") && s.getNamespace().equals(dir.getNamespace()));
+        Map<Identifier, Resource> files = ResourceIndex.get(manager).findResources(dir, s -> s.getPath().endsWith(".png"));
         Map<Identifier, NativeImage> res = new HashMap<>(files.size());
+        try {
+            readLightmaps(dir, files, res);
+        } catch(Throwable t) {
+            // free the images read before the failure
+            closeAll(res);
+            throw t;
+        }
+        return res;
+    }
+
+    private static void readLightmaps(Identifier dir, Map<Identifier, Resource> files, Map<Identifier, NativeImage> res) {
         for(Map.Entry<Identifier, Resource> entry : files.entrySet()) {
             Identifier id = entry.getKey();
             try(InputStream in = entry.getValue().getInputStream()) {
@@ -82,7 +100,8 @@ public class LightmapsResource implements SimpleResourceReloadListener<Map<Ident
                 String dimIdStr = thisStr.substring(dirStrLen + 1, thisStr.length() - 4).replaceFirst("/", ":");
                 Identifier dimId = Identifier.tryParse(fixOptifineDimId(dimIdStr));
                 if(dimId != null) {
-                    res.put(dimId, NativeImage.read(in));
+                    // two files may name the same dimension, e.g. world0.png and minecraft/overworld.png
+                    NativeImageTracker.close(res.put(dimId, NativeImageTracker.track(NativeImage.read(in))));
                 } else {
                     logger.error("Invalid lightmap dimension ID: " + thisStr);
                 }
@@ -91,7 +110,12 @@ public class LightmapsResource implements SimpleResourceReloadListener<Map<Ident
                 logger.error("Could not read lightmap file " + id, e);
             }
         }
-        return res;
+    }
+
+    private static void closeAll(Map<Identifier, NativeImage> lightmaps) {
+        for(NativeImage img : lightmaps.values()) {
+            NativeImageTracker.close(img);
+        }
     }
 
     private static String fixOptifineDimId(String dimIdStr) {
@@ -108,14 +132,21 @@ public class LightmapsResource implements SimpleResourceReloadListener<Map<Ident
     public CompletableFuture<Void> apply(Map<Identifier, NativeImage> lightmapData, ResourceManager resourceManager, Profiler profiler, Executor executor) {
         return CompletableFuture.runAsync(() -> {
             Lightmaps.clearLightmaps();
-            for(Map.Entry<Identifier, NativeImage> entry : lightmapData.entrySet()) {
-                NativeImage img = entry.getValue();
-                if(img.getWidth() < 2 || (img.getHeight() != 32 && img.getHeight() != 64)) {
-                    logger.warn("Lightmap image dimensions must be nX32 or nX64: " + id);
-                } else {
-                    Lightmaps.addLightmap(entry.getKey(), new Lightmap(img));
+            try {
+                for(Map.Entry<Identifier, NativeImage> entry : lightmapData.entrySet()) {
+                    NativeImage img = entry.getValue();
+                    if(img.getWidth() < 2 || (img.getHeight() != 32 && img.getHeight() != 64)) {
+                        logger.warn("Lightmap image dimensions must be nX32 or nX64: " + id);
+                        NativeImageTracker.close(img);
+                    } else {
+                        Lightmaps.addLightmap(entry.getKey(), new Lightmap(img));
+                    }
                 }
+            } finally {
+                // free the remaining images if a lightmap could not be created
+                closeAll(lightmapData);
             }
+            NativeImageTracker.report(id);
         }, executor);
     }
 }
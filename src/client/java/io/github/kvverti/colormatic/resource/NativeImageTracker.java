@@ -0,0 +1,101 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.resource;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import io.github.kvverti.colormatic.Colormatic;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.minecraft.client.texture.NativeImage;
+
+/**
+ * Tracks the native images owned by Colormatic, so that they are freed when superseded instead of
+ * whenever the garbage collector gets to them. In debug mode, the number of live images is logged
+ * after each reload to detect leaks.
+ */
+public final class NativeImageTracker {
+
+    private static final Logger log = LogManager.getLogger();
+
+    /**
+     * The live images and their sizes in bytes.
+     */
+    private static final Map<NativeImage, Long> liveImages = new IdentityHashMap<>();
+    private static long liveBytes = 0;
+
+    private NativeImageTracker() {
+    }
+
+    /**
+     * Takes ownership of the given image. The image must later be freed with {@link #close(NativeImage)}.
+     */
+    public static NativeImage track(NativeImage image) {
+        long bytes = (long)image.getWidth() * image.getHeight() * image.getFormat().getChannelCount();
+        synchronized(liveImages) {
+            if(liveImages.put(image, bytes) == null) {
+                liveBytes += bytes;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Frees the given image. Does nothing if the image is null or has already been freed.
+     */
+    public static void close(NativeImage image) {
+        if(image == null) {
+            return;
+        }
+        synchronized(liveImages) {
+            Long bytes = liveImages.remove(image);
+            if(bytes == null) {
+                return;
+            }
+            liveBytes -= bytes;
+        }
+        image.close();
+    }
+
+    public static int getLiveCount() {
+        synchronized(liveImages) {
+            return liveImages.size();
+        }
+    }
+
+    public static long getLiveBytes() {
+        synchronized(liveImages) {
+            return liveBytes;
+        }
+    }
+
+    /**
+     * Logs the live images in debug mode. Called after each reload.
+     */
+    public static void report(Object source) {
+        if(Colormatic.DEBUG) {
+            log.info("{}: {} native image(s) live, {} bytes", source, getLiveCount(), getLiveBytes());
+        }
+    }
+}
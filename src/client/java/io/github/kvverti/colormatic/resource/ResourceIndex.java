@@ -0,0 +1,175 @@
+/*
+ * Colormatic
+ * Copyright (C) 2026  Thalia Nero
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * As an additional permission, when conveying the Corresponding Source of an
+ * object code form of this work, you may exclude the Corresponding Source for
+ * "Minecraft" by Mojang Studios, AB.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.kvverti.colormatic.resource;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import com.google.common.collect.ImmutableMap;
+import io.github.kvverti.colormatic.Colormatic;
+import net.fabricmc.fabric.api.resource.SimpleSynchronousResourceReloadListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.resource.Resource;
+import net.minecraft.resource.ResourceManager;
+import net.minecraft.util.Identifier;
+
+/**
+ * An index of the resources in the directories Colormatic reads from, built once per resource manager.
+ * Reload listeners query the index instead of scanning or probing the resource packs themselves.
+ * Lookups outside the indexed directories are passed on to the resource manager.
+ */
+public final class ResourceIndex {
+
+    private static final Logger log = LogManager.getLogger();
+
+    /**
+     * The directories that are indexed.
+     */
+    private static final List<Identifier> ROOTS = List.of(
+        new Identifier(Colormatic.MODID, "colormap"),
+        new Identifier(Colormatic.MODID, "lightmap"),
+        new Identifier("minecraft", "optifine/colormap"),
+        new Identifier("minecraft", "optifine/lightmap"));
+
+    /**
+     * The index of the current reload. A reload uses a single resource manager, so one slot is enough; an
+     * index built for another manager is replaced. {@link ClearListener} drops it once the listeners that
+     * read it have applied. Listeners that reload outside the usual order, such as the custom block
+     * colormaps loaded with the models, may build it again afterward, and it is then kept until the
+     * next reload replaces or clears it.
+     */
+    @Nullable
+    private static ResourceIndex latest;
+
+    /**
+     * The manager this index was built from. It is held weakly so that a kept index does not keep the
+     * previous reload's resource packs alive; once the manager is collected, the index is rebuilt.
+     */
+    private final WeakReference<ResourceManager> manager;
+    private final Map<Identifier, Resource> resources;
+
+    private ResourceIndex(ResourceManager manager) {
+        this.manager = new WeakReference<>(manager);
+        long start = System.nanoTime();
+        Map<Identifier, Resource> resources = new HashMap<>();
+        for(Identifier root : ROOTS) {
+            resources.putAll(manager.findResources(root.getPath(), id -> id.getNamespace().equals(root.getNamespace())));
+        }
+        this.resources = ImmutableMap.copyOf(resources);
+        log.info("Indexed {} Colormatic resource(s) in {} ms", this.resources.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns the index for the given resource manager, building it if needed.
+     */
+    public static synchronized ResourceIndex get(ResourceManager manager) {
+        var index = latest;
+        if(index == null || index.manager.get() != manager) {
+            index = new ResourceIndex(manager);
+            latest = index;
+        }
+        return index;
+    }
+
+    /**
+     * Drops the latest index, so that the resources of the last reload are not kept alive.
+     */
+    public static synchronized void clear() {
+        latest = null;
+    }
+
+    private static boolean isIndexed(Identifier id) {
+        for(Identifier root : ROOTS) {
+            if(id.getNamespace().equals(root.getNamespace()) && id.getPath().startsWith(root.getPath() + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the resource with the given location, if it exists.
+     */
+    public Optional<Resource> getResource(Identifier id) {
+        if(isIndexed(id)) {
+            return Optional.ofNullable(resources.get(id));
+        }
+        var manager = this.manager.get();
+        return manager != null ? manager.getResource(id) : Optional.empty();
+    }
+
+    /**
+     * Returns the resources in the given directory and its subdirectories that match the given filter.
+     */
+    public Map<Identifier, Resource> findResources(Identifier dir, Predicate<Identifier> filter) {
+        Predicate<Identifier> inDir = id -> id.getNamespace().equals(dir.getNamespace()) && filter.test(id);
+        if(isIndexed(dir) || ROOTS.contains(dir)) {
+            String prefix = dir.getPath() + "/";
+            Map<Identifier, Resource> res = new HashMap<>();
+            for(Map.Entry<Identifier, Resource> entry : resources.entrySet()) {
+                if(entry.getKey().getPath().startsWith(prefix) && inDir.test(entry.getKey())) {
+                    res.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return res;
+        }
+        var manager = this.manager.get();
+        return manager != null ? manager.findResources(dir.getPath(), inDir) : Map.of();
+    }
+
+    /**
+     * Clears the index once the given reload listeners, which read from it, have finished reloading.
+     */
+    public static final class ClearListener implements SimpleSynchronousResourceReloadListener {
+
+        private static final Identifier ID = new Identifier(Colormatic.MODID, "resource_index");
+
+        private final Collection<Identifier> dependencies;
+
+        public ClearListener(Collection<Identifier> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        @Override
+        public Identifier getFabricId() {
+            return ID;
+        }
+
+        @Override
+        public Collection<Identifier> getFabricDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public void reload(ResourceManager manager) {
+            clear();
+        }
+    }
+}